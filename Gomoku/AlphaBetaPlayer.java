@@ -0,0 +1,1289 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base of the gomoku players that implement the Minimax algorithm with
+ * alpha-beta pruning. The search runs on a BitBoard converted once per move,
+ * the players only differ in how they weight the threats found on the board.
+ * With more than one thread the root moves are split among worker copies of
+ * the player that share the transposition table
+ * 
+ * @author Leticia Wanderley
+ */
+public abstract class AlphaBetaPlayer extends GomokuPlayer implements Cloneable {
+
+	/**
+	 * Version of the evaluation of the players, written in the header of
+	 * position cache files and XORed into the keys of their entries. It must
+	 * be raised whenever the value any player gives to a position changes, so
+	 * the results of the old evaluation are not read back. Versions 2 and 4
+	 * count the opponent's threes and twos in Player150721453.threatSearch,
+	 * where the original evaluation, and version 3, count the player's
+	 */
+	public static final int EVALUATION_VERSION = 4;
+
+	private final int MAX_DEPTH = 30;
+	private final int TABLE_MEGABYTES = 16;
+	/** Shallowest search kept in the position cache */
+	private final int CACHE_DEPTH = 3;
+	private final long TIME_LIMIT = 1000;
+	/** Fraction of the time limit given to the threat space search */
+	private final int THREAT_TIME_DIVISOR = 10;
+	/** Longest pondering, in time limits, if the opponent never moves */
+	private final int PONDER_TIME_LIMITS = 10;
+	private final int[] ROW_STEPS = WindowTable.ROW_STEPS;
+	private final int[] COL_STEPS = WindowTable.COL_STEPS;
+	// principal variation: best line found from each ply, built from the
+	// line of the ply below whenever a move improves the value of a node
+	private int[][] pv = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+	private int[] pvLength = new int[MAX_DEPTH + 1];
+	// principal variation of the last completed iteration
+	private int[] bestLine = new int[0];
+	private TranspositionTable table;
+	private TranspositionTable.Entry entry = new TranspositionTable.Entry();
+	private PositionCache cache;
+	private TranspositionTable.Entry cacheEntry = new TranspositionTable.Entry();
+	// XORed with the keys of the position cache, tells the searches of this
+	// player, rules, keys and evaluation apart from the ones of other players
+	// and processes sharing the file
+	private long cacheSignature;
+	private MoveOrdering ordering;
+	private int threads = 1;
+	private boolean deterministic;
+	private boolean principalVariation;
+	private boolean canonicalTable;
+	private int candidateRadius = BitBoard.RADIUS;
+	private int winLength = BitBoard.WIN_LENGTH;
+	private int maxDepth = MAX_DEPTH;
+	private Random random = new Random();
+	private OpeningBook book;
+	private boolean pondering;
+	// copy of the player searching the predicted position on its own thread
+	// and the hash of that position; cancelled stops the search of the copy,
+	// finished tells it reached the depth limit
+	private AlphaBetaPlayer ponderer;
+	private Thread ponderThread;
+	private long ponderHash;
+	private volatile boolean cancelled;
+	private boolean finished;
+	private ForkJoinPool pool;
+	private AlphaBetaPlayer[] workers;
+	private BitBoard rootBoard;
+	private long perspective;
+	private long timeLimit = TIME_LIMIT;
+	private long deadline;
+	private boolean aborted;
+	private int rootDepth;
+	private SearchStats stats = new SearchStats(MAX_DEPTH);
+	private boolean logging;
+	// threat value of the window starting at each position in each direction,
+	// indexed by (row * cols + col) * 4 + direction, and their sum
+	private double[] windowValues;
+	private double value;
+	// values overwritten by each move, restored when the move is unmade
+	private int[] undoIndexes;
+	private double[] undoValues;
+	private int undoTop;
+
+	public AlphaBetaPlayer() {
+		this.table = new TranspositionTable(TABLE_MEGABYTES);
+	}
+
+	/**
+	 * @param tableMegabytes
+	 *            Memory budget of the transposition table
+	 */
+	public AlphaBetaPlayer(int tableMegabytes) {
+		this.table = new TranspositionTable(tableMegabytes);
+	}
+
+	/**
+	 * Sets the wall-clock time the player may spend on each move
+	 * 
+	 * @param millis
+	 *            Time limit in milliseconds
+	 */
+	public void setTimeLimit(long millis) {
+		this.timeLimit = millis;
+	}
+
+	/**
+	 * Sets the number of threads that search the root moves in parallel
+	 * 
+	 * @param threads
+	 *            Number of threads, 1 to search sequentially
+	 */
+	public void setThreads(int threads) {
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+		this.threads = threads;
+		this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * When deterministic, the parallel search returns the same move as the
+	 * sequential search of the same depth. Table entries are then only used
+	 * for cutoffs when they were searched to exactly the same depth, so
+	 * values do not depend on the order in which threads fill the table, and
+	 * among the root moves worth the best value the first in board order is
+	 * played, so the move does not depend on the order they were searched in
+	 * 
+	 * @param deterministic
+	 *            true to make the returned move independent of thread timing
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
+
+	/**
+	 * Selects the search algorithm: principal variation search (negaScout)
+	 * or the maxValue/minValue alpha-beta pair. Both find the same values
+	 * 
+	 * @param principalVariation
+	 *            true to search with negaScout
+	 */
+	public void setPrincipalVariationSearch(boolean principalVariation) {
+		this.principalVariation = principalVariation;
+	}
+
+	/**
+	 * Keys the transposition table with the canonical hash of the positions,
+	 * so the rotations and reflections of a position share one entry, whose
+	 * move is stored in the canonical orientation and turned back on each
+	 * probe. It is off by default because the evaluation is not quite
+	 * symmetric (windows are scored from their first position and some of
+	 * the two stone patterns have no mirror image), so a shared entry may
+	 * hold a value slightly different from the one a search of that
+	 * orientation would find
+	 * 
+	 * @param canonicalTable
+	 *            true to share entries among the symmetric positions
+	 */
+	public void setCanonicalTable(boolean canonicalTable) {
+		this.canonicalTable = canonicalTable;
+	}
+
+	/**
+	 * Keeps the results of deep searches in a position cache as well, and
+	 * looks the positions missing from the transposition table up there, so
+	 * what was learned in earlier games, and by the other players sharing the
+	 * cache, is not searched again
+	 * 
+	 * @param cache
+	 *            Position cache, null to use the transposition table alone
+	 */
+	public void setPositionCache(PositionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets how far from the stones on the board the searched moves may be
+	 * 
+	 * @param radius
+	 *            Distance in rows and columns, 1 for the positions adjacent
+	 *            to a stone
+	 */
+	public void setCandidateRadius(int radius) {
+		this.candidateRadius = radius;
+	}
+
+	/**
+	 * Sets the number of stones in a row needed to win, 5 for gomoku. The size
+	 * of the board is read from the board each move receives
+	 * 
+	 * @param winLength
+	 *            Length of a winning line
+	 */
+	public void setWinLength(int winLength) {
+		this.winLength = winLength;
+	}
+
+	/**
+	 * Seeds the random moves played on empty boards, so games can be replayed
+	 * 
+	 * @param seed
+	 *            Seed of the random number generator
+	 */
+	public void setSeed(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Sets the book the player takes its opening moves from. There is none by
+	 * default: a book holds the moves of the player that generated it, so a
+	 * player only plays from one it is given, such as OpeningBook.shared()
+	 * for Player150721453
+	 * 
+	 * @param book
+	 *            Opening book, null to always search
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+
+	/**
+	 * When pondering, the player keeps searching after each move, on the
+	 * position it expects after the opponent's reply, so the transposition
+	 * table is already filled when that position comes
+	 * 
+	 * @param pondering
+	 *            true to search on the opponent's time
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+		if (!pondering) {
+			this.stopPondering();
+		}
+	}
+
+	/**
+	 * Limits the depth of the iterative deepening, so a move can be searched
+	 * to a fixed depth regardless of the time limit
+	 * 
+	 * @param depth
+	 *            Deepest search, at most MAX_DEPTH
+	 */
+	public void setMaxDepth(int depth) {
+		this.maxDepth = Math.min(depth, MAX_DEPTH);
+	}
+
+	/**
+	 * Forgets every position stored in the transposition table, so the next
+	 * move is searched as if it were the first of the game
+	 */
+	public void clearTable() {
+		this.table.clear();
+	}
+
+	/**
+	 * Prints the statistics of the search of every move to the standard error
+	 * 
+	 * @param logging
+	 *            true to print a line per move
+	 */
+	public void setLogging(boolean logging) {
+		this.logging = logging;
+	}
+
+	/**
+	 * @return number of nodes visited while choosing the last move
+	 */
+	public long getNodes() {
+		long nodes = this.stats.nodes;
+		if (this.workers != null) {
+			for (AlphaBetaPlayer worker : this.workers) {
+				nodes += worker.stats.nodes;
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return statistics of the search of the last move, including the
+	 *         workers of the parallel search
+	 */
+	public SearchStats getStats() {
+		SearchStats stats = this.stats.copy();
+		if (this.workers != null) {
+			for (AlphaBetaPlayer worker : this.workers) {
+				stats.add(worker.stats);
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Searches one more ply on each iteration until the time limit is reached
+	 * and returns the best move of the last completed iteration. The first
+	 * iteration is never interrupted, so there is always a move to return.
+	 * Moves of the opening book are played without searching, and a threat
+	 * space search runs first, its move is played at once when it proves a
+	 * forced win
+	 */
+	@Override
+	public Move chooseMove(Color[][] board, Color me) {
+		long stopTime = System.nanoTime() + this.timeLimit * 1000000L;
+		BitBoard bitBoard = new BitBoard(board, this.candidateRadius, this.winLength);
+		int side = BitBoard.side(me);
+		AlphaBetaPlayer ponderer = this.stopPondering();
+		this.stats.clear();
+		this.workers = null;
+		Move best;
+		// the book only holds five in a row openings
+		Move bookMove = this.book == null || this.winLength != BitBoard.WIN_LENGTH ? null
+				: this.book.lookup(bitBoard, this.random);
+		boolean ponderHit = ponderer != null && this.ponderHash == bitBoard.hash();
+		if (bookMove != null) {
+			this.bestLine = new int[] { bookMove.row * bitBoard.cols + bookMove.col };
+			this.stats.bookMove();
+			best = bookMove;
+		} else if (ponderHit && ponderer.finished && ponderer.bestLine.length > 0) {
+			// the opponent played the predicted move and pondering already
+			// searched the position as deep as the player would
+			this.bestLine = ponderer.bestLine;
+			this.stats.ponderHit();
+			best = new Move(this.bestLine[0] / bitBoard.cols, this.bestLine[0] % bitBoard.cols);
+		} else {
+			int win = new ThreatSpaceSearch(bitBoard, side,
+					System.nanoTime() + this.timeLimit * 1000000L / THREAT_TIME_DIVISOR).findWin();
+			if (win >= 0) {
+				this.bestLine = new int[] { win };
+				this.stats.threatWin();
+				best = new Move(win / bitBoard.cols, win % bitBoard.cols);
+			} else {
+				if (ponderHit) {
+					this.stats.ponderHit();
+				}
+				this.startSearch(bitBoard, side);
+				best = this.iterativeDeepening(bitBoard, side, stopTime);
+			}
+		}
+		this.log();
+		if (this.pondering && this.bestLine.length > 1) {
+			this.startPondering(board, me, this.bestLine[0], this.bestLine[1]);
+		}
+		return best;
+	}
+
+	/**
+	 * Searches one more ply on each iteration until the time limit is reached
+	 * 
+	 * @param bitBoard
+	 *            Representation of the state of the game
+	 * @param side
+	 *            Side which the player is playing
+	 * @param stopTime
+	 *            System.nanoTime() after which no iteration is started
+	 * @return best move of the last completed iteration, null if the first
+	 *         iteration was cancelled
+	 */
+	private Move iterativeDeepening(BitBoard bitBoard, int side, long stopTime) {
+		Move best = null;
+		this.finished = false;
+		int maxDepth = Math.min(this.maxDepth, bitBoard.rows * bitBoard.cols - bitBoard.stones() + 1);
+		for (this.rootDepth = 2; this.rootDepth <= maxDepth; this.rootDepth++) {
+			long iterationStart = System.nanoTime();
+			long iterationNodes = this.getNodes();
+			double max;
+			if (this.threads > 1) {
+				max = this.parallelRoot(bitBoard, side);
+			} else if (this.principalVariation) {
+				max = this.negaScout(bitBoard, side, side, this.rootDepth, -Double.MAX_VALUE, Double.MAX_VALUE);
+			} else {
+				max = this.maxValue(bitBoard, side, this.rootDepth, -Double.MAX_VALUE, Double.MAX_VALUE);
+			}
+			if (this.aborted) {
+				return best;
+			}
+			if (this.pvLength[0] > 0) {
+				this.bestLine = Arrays.copyOf(this.pv[0], this.pvLength[0]);
+				best = new Move(this.bestLine[0] / bitBoard.cols, this.bestLine[0] % bitBoard.cols);
+			} else {
+				// no move has a value, any move will do
+				this.bestLine = new int[0];
+				best = new Move(this.randInt(bitBoard.rows / 4, bitBoard.rows - 1 - bitBoard.rows / 4),
+						this.randInt(bitBoard.cols / 4, bitBoard.cols - 1 - bitBoard.cols / 4));
+			}
+			this.stats.iteration(this.rootDepth, max, this.getNodes() - iterationNodes,
+					System.nanoTime() - iterationStart);
+			if (max == -Double.MAX_VALUE || System.nanoTime() > stopTime) {
+				return best;
+			}
+			this.deadline = stopTime;
+		}
+		this.finished = true;
+		return best;
+	}
+
+	/**
+	 * Starts searching, on another thread, the position expected after the
+	 * move chosen and the reply predicted by the principal variation
+	 * 
+	 * @param board
+	 *            Representation of the game board before the move
+	 * @param me
+	 *            Color of the player
+	 * @param move
+	 *            Move chosen, as row * cols + col
+	 * @param reply
+	 *            Predicted reply of the opponent, as row * cols + col
+	 */
+	private void startPondering(Color[][] board, Color me, int move, int reply) {
+		int cols = board[0].length;
+		Color[][] predicted = new Color[board.length][];
+		for (int row = 0; row < board.length; row++) {
+			predicted[row] = board[row].clone();
+		}
+		predicted[move / cols][move % cols] = me;
+		predicted[reply / cols][reply % cols] = Color.BLACK.equals(me) ? Color.WHITE : Color.BLACK;
+		final BitBoard bitBoard = new BitBoard(predicted, this.candidateRadius, this.winLength);
+		final int side = BitBoard.side(me);
+		final AlphaBetaPlayer ponderer;
+		try {
+			ponderer = (AlphaBetaPlayer) this.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		// a sequential copy with its own search state, sharing the table
+		ponderer.threads = 1;
+		ponderer.pool = null;
+		ponderer.workers = null;
+		ponderer.ordering = null;
+		ponderer.entry = new TranspositionTable.Entry();
+		ponderer.cacheEntry = new TranspositionTable.Entry();
+		ponderer.stats = new SearchStats(MAX_DEPTH);
+		ponderer.pv = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+		ponderer.pvLength = new int[MAX_DEPTH + 1];
+		ponderer.bestLine = new int[0];
+		ponderer.cancelled = false;
+		final long stopTime = System.nanoTime() + PONDER_TIME_LIMITS * this.timeLimit * 1000000L;
+		this.ponderer = ponderer;
+		this.ponderHash = bitBoard.hash();
+		this.ponderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ponderer.startSearch(bitBoard, side);
+				ponderer.deadline = stopTime;
+				ponderer.iterativeDeepening(bitBoard, side, stopTime);
+			}
+		}, "ponder");
+		this.ponderThread.setDaemon(true);
+		this.ponderThread.start();
+	}
+
+	/**
+	 * Cancels pondering and waits for its thread to finish
+	 * 
+	 * @return the copy of the player that was pondering, null if there was
+	 *         none
+	 */
+	private AlphaBetaPlayer stopPondering() {
+		AlphaBetaPlayer ponderer = this.ponderer;
+		if (ponderer == null) {
+			return null;
+		}
+		ponderer.cancelled = true;
+		try {
+			this.ponderThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.ponderer = null;
+		this.ponderThread = null;
+		return ponderer;
+	}
+
+	/**
+	 * @return true if a copy of the player is searching the position expected
+	 *         after the opponent's reply
+	 */
+	boolean isPondering() {
+		return this.ponderer != null;
+	}
+
+	/**
+	 * @return best line of moves found for the last move, as row * cols + col,
+	 *         starting with the move itself
+	 */
+	public int[] getPrincipalVariation() {
+		return this.bestLine.clone();
+	}
+
+	/**
+	 * Prints the statistics of the last move, if logging is on
+	 */
+	private void log() {
+		if (this.logging) {
+			System.err.println(this.getClass().getSimpleName() + ": " + this.getStats());
+		}
+	}
+
+	/**
+	 * Prepares the search state for a new move
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 */
+	void startSearch(BitBoard board, int me) {
+		int cells = board.rows * board.cols;
+		this.perspective = Zobrist.perspective(me);
+		if (this.cache != null) {
+			this.cacheSignature = PositionCache.searchSignature()
+					^ PositionCache.signature(this.getClass().getName() + " " + board.rows + "x" + board.cols + " win "
+							+ this.winLength + " radius " + this.candidateRadius);
+		}
+		this.windowValues = new double[4 * cells];
+		this.undoIndexes = new int[(cells + 1) * (4 * board.windows().length + 1)];
+		this.undoValues = new double[this.undoIndexes.length];
+		this.undoTop = 0;
+		this.value = this.evaluationFuction(board, me);
+		this.table.newSearch();
+		if (this.ordering == null || this.ordering.size() != cells) {
+			this.ordering = new MoveOrdering(cells, MAX_DEPTH);
+		}
+		this.ordering.clear();
+		this.deadline = Long.MAX_VALUE;
+		this.aborted = false;
+		if (this.threads > 1) {
+			this.workers = new AlphaBetaPlayer[this.threads];
+			for (int w = 0; w < this.threads; w++) {
+				this.workers[w] = this.newWorker(board);
+			}
+		}
+	}
+
+	/**
+	 * Creates a copy of the player, with its own board and search state, that
+	 * shares the transposition table with the player
+	 * 
+	 * @param board
+	 *            Representation of the state of the game at the root
+	 * @return worker for the parallel search
+	 */
+	private AlphaBetaPlayer newWorker(BitBoard board) {
+		AlphaBetaPlayer worker;
+		try {
+			worker = (AlphaBetaPlayer) this.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		worker.rootBoard = new BitBoard(board);
+		worker.windowValues = this.windowValues.clone();
+		worker.undoIndexes = new int[this.undoIndexes.length];
+		worker.undoValues = new double[this.undoValues.length];
+		worker.ordering = new MoveOrdering(board.rows * board.cols, MAX_DEPTH);
+		worker.entry = new TranspositionTable.Entry();
+		worker.cacheEntry = new TranspositionTable.Entry();
+		worker.stats = new SearchStats(MAX_DEPTH);
+		worker.pv = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+		worker.pvLength = new int[MAX_DEPTH + 1];
+		worker.workers = null;
+		return worker;
+	}
+
+	/**
+	 * Searches the root of the tree with several threads. The first (best
+	 * ordered) move is searched by the player itself to get an alpha bound,
+	 * then the workers take the remaining moves one at a time, sharing the
+	 * alpha bound as it improves. The line found below each move is kept, so
+	 * the principal variation goes on past the root move chosen
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 * @return maximum value achieved from the initial state
+	 */
+	private double parallelRoot(BitBoard board, final int me) {
+		final int depth = this.rootDepth - 1;
+		boolean found = this.probe(board, depth);
+		int count = this.ordering.generate(board, 0, me, found ? this.entry.move : -1);
+		if (count == 0 || depth == 0) {
+			return this.maxValue(board, me, this.rootDepth, -Double.MAX_VALUE, Double.MAX_VALUE);
+		}
+		final int[] moves = new int[count];
+		for (int i = 0; i < count; i++) {
+			moves[i] = this.ordering.select(0, i);
+		}
+		final double[] values = new double[count];
+		// alpha each move was searched with, values not above it are bounds
+		final double[] alphas = new double[count];
+		// principal variation below each move, from the search that valued it
+		final int[][] lines = new int[count][];
+		values[0] = this.searchRootMove(board, me, depth, moves[0], -Double.MAX_VALUE);
+		alphas[0] = -Double.MAX_VALUE;
+		lines[0] = Arrays.copyOf(this.pv[1], this.pvLength[1]);
+		if (this.aborted) {
+			return values[0];
+		}
+		final AtomicLong alpha = new AtomicLong(Double.doubleToLongBits(values[0]));
+		final AtomicInteger next = new AtomicInteger(1);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final AlphaBetaPlayer worker : this.workers) {
+			worker.rootDepth = this.rootDepth;
+			worker.deadline = this.deadline;
+			worker.aborted = false;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					worker.searchRootMoves(me, depth, moves, values, alphas, lines, alpha, next);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> task : this.pool.invokeAll(tasks)) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.aborted = true;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		for (AlphaBetaPlayer worker : this.workers) {
+			this.aborted = this.aborted || worker.aborted;
+		}
+		if (this.aborted) {
+			return values[0];
+		}
+		// the first of the moves with the best exact value, as in the
+		// sequential search
+		int best = 0;
+		for (int i = 1; i < count; i++) {
+			if (values[i] > alphas[i] && values[i] > values[best]) {
+				best = i;
+			}
+		}
+		if (this.deterministic) {
+			int first = best;
+			for (int i = 0; i < count; i++) {
+				if (values[i] == values[best] && moves[i] < moves[first]) {
+					if (values[i] > alphas[i]) {
+						first = i;
+					} else if (this.breaksTie(board, me, depth, moves[i], moves[first], values[best])) {
+						first = i;
+						lines[i] = Arrays.copyOf(this.pv[1], this.pvLength[1]);
+					}
+				}
+			}
+			if (this.aborted) {
+				return values[0];
+			}
+			best = first;
+		}
+		int row = moves[best] / board.cols;
+		int col = moves[best] % board.cols;
+		this.pv[0][0] = moves[best];
+		System.arraycopy(lines[best], 0, this.pv[0], 1, lines[best].length);
+		this.pvLength[0] = lines[best].length + 1;
+		this.storeTable(board, depth, -Double.MAX_VALUE, Double.MAX_VALUE, values[best], row, col);
+		return values[best];
+	}
+
+	/**
+	 * Worker side of parallelRoot: searches root moves until there are none
+	 * left, raising the shared alpha bound whenever a move improves it
+	 * 
+	 * @param me
+	 *            Side which the player is playing
+	 * @param depth
+	 *            Depth of the search tree below the root
+	 * @param moves
+	 *            Root moves
+	 * @param values
+	 *            Values found for each root move
+	 * @param alphas
+	 *            Alpha bound each root move was searched with
+	 * @param lines
+	 *            Principal variation found below each root move
+	 * @param alpha
+	 *            Shared alpha bound, as the bits of a double
+	 * @param next
+	 *            Index of the next root move to be searched
+	 */
+	private void searchRootMoves(int me, int depth, int[] moves, double[] values, double[] alphas, int[][] lines,
+			AtomicLong alpha, AtomicInteger next) {
+		int i;
+		while ((i = next.getAndIncrement()) < moves.length) {
+			double bound = Double.longBitsToDouble(alpha.get());
+			double val = this.searchRootMove(this.rootBoard, me, depth, moves[i], bound);
+			if (this.aborted) {
+				return;
+			}
+			values[i] = val;
+			alphas[i] = bound;
+			lines[i] = Arrays.copyOf(this.pv[1], this.pvLength[1]);
+			long current = alpha.get();
+			while (val > Double.longBitsToDouble(current)
+					&& !alpha.compareAndSet(current, Double.doubleToLongBits(val))) {
+				current = alpha.get();
+			}
+		}
+	}
+
+	/**
+	 * Searches one root move
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 * @param depth
+	 *            Depth of the search tree below the root
+	 * @param move
+	 *            Root move, as row * cols + col
+	 * @param alpha
+	 *            Lowest value range, used for pruning
+	 * @return value of the move, or an upper bound if it is not above alpha
+	 */
+	private double searchRootMove(BitBoard board, int me, int depth, int move, double alpha) {
+		int row = move / board.cols;
+		int col = move % board.cols;
+		this.makeMove(board, row, col, me, me);
+		double val;
+		if (this.principalVariation) {
+			val = -this.negaScout(board, me, BitBoard.opposite(me), depth, -Double.MAX_VALUE, -alpha);
+		} else {
+			val = this.minValue(board, me, depth, alpha, Double.MAX_VALUE);
+		}
+		this.unmakeMove(board, row, col);
+		return val;
+	}
+
+	/**
+	 * Tells, when deterministic, if a root move that failed low at exactly
+	 * the best value is worth as much as the best move and comes before it
+	 * in board order. A value that fails low is only an upper bound, so the
+	 * move is searched again just below the best value
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 * @param depth
+	 *            Depth of the search tree below the root
+	 * @param move
+	 *            Root move, as row * cols + col
+	 * @param bestMove
+	 *            Best root move found so far, as row * cols + col
+	 * @param best
+	 *            Value of the best root move
+	 * @return true if the move must be played instead of the best move
+	 */
+	private boolean breaksTie(BitBoard board, int me, int depth, int move, int bestMove, double best) {
+		return this.deterministic && move < bestMove
+				&& this.searchRootMove(board, me, depth, move, Math.nextDown(best)) >= best && !this.aborted;
+	}
+
+	/**
+	 * Searches for possible threats in a set of adjacent positions
+	 * 
+	 * @param currentRow
+	 *            Current row being searched
+	 * @param currentCol
+	 *            Current column being searched
+	 * @param rowStep
+	 *            Row search step
+	 * @param colStep
+	 *            Column search step
+	 * @param board
+	 *            Representation of the game board
+	 * @param me
+	 *            Side which the player is playing
+	 * @return value of threat found within the set of positions
+	 */
+	protected abstract double threatSearch(int currentRow, int currentCol, int rowStep, int colStep, BitBoard board,
+			int me);
+
+	/**
+	 * Scores the window that starts on a position, the way the evaluation
+	 * reaches threatSearch. Players whose threat tables work on position
+	 * indexes override it to skip the conversion to rows and columns
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @param start
+	 *            First position of the window, as row * cols + col
+	 * @param direction
+	 *            Index of the direction in WindowTable.ROW_STEPS and
+	 *            COL_STEPS
+	 * @param me
+	 *            Side which the player is playing
+	 * @return value of threat found within the window
+	 */
+	protected double windowValue(BitBoard board, int start, int direction, int me) {
+		return this.threatSearch(start / board.cols, start % board.cols, ROW_STEPS[direction], COL_STEPS[direction],
+				board, me);
+	}
+
+	/**
+	 * Checks, every few nodes, if the time limit of the move has been reached
+	 * 
+	 * @return true if the search must be aborted, false otherwise
+	 */
+	private boolean outOfTime() {
+		if ((++this.stats.nodes & 0xFF) == 0 && (System.nanoTime() > this.deadline || this.cancelled)) {
+			this.aborted = true;
+		}
+		return this.aborted;
+	}
+
+	/**
+	 * Evaluates the state of the board (game) and returns the evaluation value.
+	 * Scans the whole board once per move, the search then keeps the value up
+	 * to date with makeMove and unmakeMove
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 * @return evaluation value
+	 */
+	double evaluationFuction(BitBoard board, int me) {
+		double value = 0.0;
+		for (int i = 0; i < board.rows; i++) {
+			for (int j = 0; j < board.cols; j++) {
+				if (board.get(i, j) != BitBoard.EMPTY) {
+					// horizontal + vertical + diagonal descending right +
+					// diagonal descending left
+					for (int d = 0; d < 4; d++) {
+						int index = (i * board.cols + j) * 4 + d;
+						this.windowValues[index] = this.windowValue(board, i * board.cols + j, d, me);
+						value += this.windowValues[index];
+					}
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Places a stone and rescores only the windows that contain it
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @param side
+	 *            Side of the stone
+	 * @param me
+	 *            Side which the player is playing
+	 */
+	void makeMove(BitBoard board, int row, int col, int side, int me) {
+		board.make(row, col, side);
+		this.undoIndexes[this.undoTop] = -1;
+		this.undoValues[this.undoTop++] = this.value;
+		WindowTable windows = board.windows();
+		int position = row * board.cols + col;
+		for (int d = 0; d < 4; d++) {
+			int count = windows.count(position, d);
+			for (int k = 0; k < count; k++) {
+				int start = windows.start(position, d, k);
+				if (board.get(start) != BitBoard.EMPTY) {
+					int index = start * 4 + d;
+					double updated = this.windowValue(board, start, d, me);
+					this.undoIndexes[this.undoTop] = index;
+					this.undoValues[this.undoTop++] = this.windowValues[index];
+					this.value += updated - this.windowValues[index];
+					this.windowValues[index] = updated;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a stone and restores the window values it changed
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 */
+	void unmakeMove(BitBoard board, int row, int col) {
+		board.unmake(row, col);
+		int index;
+		while ((index = this.undoIndexes[--this.undoTop]) >= 0) {
+			this.windowValues[index] = this.undoValues[this.undoTop];
+		}
+		this.value = this.undoValues[this.undoTop];
+	}
+
+	/**
+	 * @return evaluation of the position being searched, as kept up to date
+	 *         by makeMove and unmakeMove
+	 */
+	double evaluation() {
+		return this.value;
+	}
+
+	/**
+	 * Part of the Minimax algorithm Calculates maximum value to be achieved from
+	 * the state of the board
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 * @param depth
+	 *            Depth of the search tree
+	 * @param alpha
+	 *            Lowest value range, used for pruning
+	 * @param beta
+	 *            Highest value range, used for pruning
+	 * @return maximum value achieved from the initial state
+	 */
+	public double maxValue(BitBoard board, int me, int depth, double alpha, double beta) {
+		double val;
+		double v = -Double.MAX_VALUE;
+		int bestRow = -1, bestCol = -1;
+		if (this.outOfTime()) {
+			return v;
+		}
+		depth--;
+		int ply = this.rootDepth - 1 - depth;
+		this.pvLength[ply] = 0;
+		if (depth == 0) {
+			this.stats.leaves++;
+			return this.value;
+		}
+		boolean found = this.probe(board, depth);
+		// the root always searches, its best move is needed to choose the move
+		if (depth < this.rootDepth - 1) {
+			double stored = this.tableValue(found, depth, alpha, beta);
+			if (!Double.isNaN(stored)) {
+				return stored;
+			}
+		}
+		int hashMove = found ? this.entry.move : -1;
+		double initialAlpha = alpha;
+		int count = this.ordering.generate(board, ply, me, hashMove);
+		for (int i = 0; i < count; i++) {
+			int move = this.ordering.select(ply, i);
+			int row = move / board.cols;
+			int col = move % board.cols;
+			this.makeMove(board, row, col, me, me);
+			val = this.minValue(board, me, depth, alpha, beta);
+			this.unmakeMove(board, row, col);
+			if (this.aborted) {
+				return v;
+			}
+			if (val > v) {
+				v = val;
+				bestRow = row;
+				bestCol = col;
+				this.updatePrincipalVariation(ply, move);
+			} else if (ply == 0 && val == v
+					&& this.breaksTie(board, me, depth, move, bestRow * board.cols + bestCol, v)) {
+				bestRow = row;
+				bestCol = col;
+				this.updatePrincipalVariation(ply, move);
+			}
+			if (val >= beta) {
+				this.ordering.cutoff(ply, move, depth);
+				this.stats.cutoff(ply, i);
+				break;
+			}
+			if (alpha < val) {
+				alpha = val;
+			}
+		}
+		if (v == -Double.MAX_VALUE) {
+			return v;
+		}
+		this.storeTable(board, depth, initialAlpha, beta, v, bestRow, bestCol);
+		return v;
+	}
+
+	/**
+	 * Part of the Minimax algorithm Calculates minimum value to be achieved from
+	 * the state of the board
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 * @param depth
+	 *            Depth of the search tree
+	 * @param alpha
+	 *            Lowest value range, used for pruning
+	 * @param beta
+	 *            Highest value range, used for pruning
+	 * @return minimum value achieved from the initial state
+	 */
+	private double minValue(BitBoard board, int me, int depth, double alpha, double beta) {
+		double val;
+		double v = Double.MAX_VALUE;
+		int bestRow = -1, bestCol = -1;
+		if (this.outOfTime()) {
+			return v;
+		}
+		depth--;
+		int ply = this.rootDepth - 1 - depth;
+		this.pvLength[ply] = 0;
+		if (depth == 0) {
+			this.stats.leaves++;
+			return this.value;
+		}
+		boolean found = this.probe(board, depth);
+		double stored = this.tableValue(found, depth, alpha, beta);
+		if (!Double.isNaN(stored)) {
+			return stored;
+		}
+		int hashMove = found ? this.entry.move : -1;
+		double initialBeta = beta;
+		int opponent = BitBoard.opposite(me);
+		int count = this.ordering.generate(board, ply, opponent, hashMove);
+		for (int i = 0; i < count; i++) {
+			int move = this.ordering.select(ply, i);
+			int row = move / board.cols;
+			int col = move % board.cols;
+			this.makeMove(board, row, col, opponent, me);
+			val = this.maxValue(board, me, depth, alpha, beta);
+			this.unmakeMove(board, row, col);
+			if (this.aborted) {
+				return v;
+			}
+			if (val < v) {
+				v = val;
+				bestRow = row;
+				bestCol = col;
+				this.updatePrincipalVariation(ply, move);
+			}
+			if (val <= alpha) {
+				this.ordering.cutoff(ply, move, depth);
+				this.stats.cutoff(ply, i);
+				break;
+			}
+			if (beta > val) {
+				beta = val;
+			}
+		}
+		if (v != Double.MAX_VALUE) {
+			this.storeTable(board, depth, alpha, initialBeta, v, bestRow, bestCol);
+		}
+		return v;
+	}
+
+	/**
+	 * Makes a move the best of its node: the principal variation of the ply
+	 * becomes the move followed by the principal variation of the ply below
+	 * 
+	 * @param ply
+	 *            Distance of the node from the root
+	 * @param move
+	 *            Best move of the node, as row * cols + col
+	 */
+	private void updatePrincipalVariation(int ply, int move) {
+		this.pv[ply][0] = move;
+		System.arraycopy(this.pv[ply + 1], 0, this.pv[ply], 1, this.pvLength[ply + 1]);
+		this.pvLength[ply] = this.pvLength[ply + 1] + 1;
+	}
+
+	/**
+	 * Principal variation search (negaScout), the negamax alternative to the
+	 * maxValue/minValue pair. Values are seen from the side to move. The first
+	 * move is searched with the whole alpha beta window, the others with a
+	 * null window that only tells if they are better than alpha, and are
+	 * searched again with the whole window if they are
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side which the player is playing
+	 * @param side
+	 *            Side to move
+	 * @param depth
+	 *            Depth of the search tree
+	 * @param alpha
+	 *            Lowest value range, used for pruning
+	 * @param beta
+	 *            Highest value range, used for pruning
+	 * @return value of the state of the board for the side to move
+	 */
+	private double negaScout(BitBoard board, int me, int side, int depth, double alpha, double beta) {
+		double best = -Double.MAX_VALUE;
+		int bestRow = -1, bestCol = -1;
+		if (this.outOfTime()) {
+			return best;
+		}
+		depth--;
+		int ply = this.rootDepth - 1 - depth;
+		this.pvLength[ply] = 0;
+		if (depth == 0) {
+			this.stats.leaves++;
+			return side == me ? this.value : -this.value;
+		}
+		boolean found = this.probe(board, depth);
+		// the table keeps values seen from the player, windows and values of
+		// the opponent's nodes are mirrored to read and store them
+		if (ply > 0) {
+			double stored = side == me ? this.tableValue(found, depth, alpha, beta)
+					: this.tableValue(found, depth, -beta, -alpha);
+			if (!Double.isNaN(stored)) {
+				return side == me ? stored : -stored;
+			}
+		}
+		int hashMove = found ? this.entry.move : -1;
+		double initialAlpha = alpha;
+		int opponent = BitBoard.opposite(side);
+		int count = this.ordering.generate(board, ply, side, hashMove);
+		for (int i = 0; i < count; i++) {
+			int move = this.ordering.select(ply, i);
+			int row = move / board.cols;
+			int col = move % board.cols;
+			this.makeMove(board, row, col, side, me);
+			double val;
+			if (i == 0) {
+				val = -this.negaScout(board, me, opponent, depth, -beta, -alpha);
+			} else {
+				val = -this.negaScout(board, me, opponent, depth, -Math.nextUp(alpha), -alpha);
+				if (val > alpha && val < beta && !this.aborted) {
+					val = -this.negaScout(board, me, opponent, depth, -beta, -alpha);
+				}
+			}
+			this.unmakeMove(board, row, col);
+			if (this.aborted) {
+				return best;
+			}
+			if (val > best) {
+				best = val;
+				bestRow = row;
+				bestCol = col;
+				this.updatePrincipalVariation(ply, move);
+			} else if (ply == 0 && val == best
+					&& this.breaksTie(board, me, depth, move, bestRow * board.cols + bestCol, best)) {
+				bestRow = row;
+				bestCol = col;
+				this.updatePrincipalVariation(ply, move);
+			}
+			if (val > alpha) {
+				alpha = val;
+			}
+			if (alpha >= beta) {
+				this.ordering.cutoff(ply, move, depth);
+				this.stats.cutoff(ply, i);
+				break;
+			}
+		}
+		if (count == 0) {
+			return best;
+		}
+		if (side == me) {
+			this.storeTable(board, depth, initialAlpha, beta, best, bestRow, bestCol);
+		} else {
+			this.storeTable(board, depth, -beta, -initialAlpha, -best, bestRow, bestCol);
+		}
+		return best;
+	}
+
+	/**
+	 * Looks the current position up in the transposition table, then in the
+	 * position cache if the search is deep enough to be kept there and the
+	 * table has no entry as deep. Shallow iterations of the iterative
+	 * deepening fill the table, so a deeper entry of an earlier game would
+	 * never be read otherwise
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param depth
+	 *            Depth of the search tree
+	 * @return true if the position was found, its entry is then in this.entry
+	 */
+	private boolean probe(BitBoard board, int depth) {
+		int symmetry = this.canonicalTable ? board.canonicalSymmetry() : 0;
+		long key = board.hash(symmetry) ^ this.perspective;
+		boolean found = this.table.probe(key, this.entry);
+		if (this.cache != null && depth >= CACHE_DEPTH && (!found || this.entry.depth < depth)
+				&& this.cache.probe(key ^ this.cacheSignature, this.cacheEntry)
+				&& (!found || this.cacheEntry.depth > this.entry.depth)) {
+			TranspositionTable.Entry deeper = this.cacheEntry;
+			this.cacheEntry = this.entry;
+			this.entry = deeper;
+			found = true;
+		}
+		this.stats.probes++;
+		if (found) {
+			this.stats.hits++;
+			if (symmetry != 0 && this.entry.move >= 0) {
+				this.entry.move = board.symmetry().preimage(symmetry, this.entry.move);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Reads the value of the current position from the transposition table
+	 * 
+	 * @param found
+	 *            true if the position was found by the last probe
+	 * @param depth
+	 *            Depth of the search tree
+	 * @param alpha
+	 *            Lowest value range, used for pruning
+	 * @param beta
+	 *            Highest value range, used for pruning
+	 * @return stored value if it is deep enough and usable within the alpha
+	 *         beta window, NaN otherwise
+	 */
+	private double tableValue(boolean found, int depth, double alpha, double beta) {
+		if (!found || this.entry.depth < depth || (this.deterministic && this.entry.depth != depth)) {
+			return Double.NaN;
+		}
+		double score = this.entry.score;
+		int bound = this.entry.bound;
+		if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && score >= beta)
+				|| (bound == TranspositionTable.UPPER && score <= alpha)) {
+			return score;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Stores the value of the current position in the transposition table
+	 * 
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param depth
+	 *            Depth of the search tree
+	 * @param alpha
+	 *            Lowest value range the position was searched with
+	 * @param beta
+	 *            Highest value range the position was searched with
+	 * @param value
+	 *            Value found by the search
+	 * @param bestRow
+	 *            Row of the best move found
+	 * @param bestCol
+	 *            Column of the best move found
+	 */
+	private void storeTable(BitBoard board, int depth, double alpha, double beta, double value, int bestRow,
+			int bestCol) {
+		int bound = TranspositionTable.EXACT;
+		if (value >= beta) {
+			bound = TranspositionTable.LOWER;
+		} else if (value <= alpha) {
+			bound = TranspositionTable.UPPER;
+		}
+		int move = bestRow < 0 ? -1 : bestRow * board.cols + bestCol;
+		int symmetry = this.canonicalTable ? board.canonicalSymmetry() : 0;
+		if (symmetry != 0 && move >= 0) {
+			move = board.symmetry().image(symmetry, move);
+		}
+		long key = board.hash(symmetry) ^ this.perspective;
+		this.table.store(key, depth, bound, value, move);
+		if (this.cache != null && depth >= CACHE_DEPTH) {
+			this.cache.store(key ^ this.cacheSignature, depth, bound, value, move);
+		}
+	}
+
+	/**
+	 * Randomizes an integer inside the range in the parameters
+	 * 
+	 * @param min
+	 *            minimum range value
+	 * @param max
+	 *            maximum range value
+	 * @return random number between minimum and max
+	 */
+	public int randInt(int min, int max) {
+		int randomNum = this.random.nextInt((max - min) + 1) + min;
+		return randomNum;
+	}
+}
@@ -0,0 +1,568 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Primitive representation of a gomoku board used by the searches. Besides a
+ * cell array it keeps, for each side, one bit mask per row, column, diagonal
+ * and anti diagonal, so adjacency and five in a row checks are shift and mask
+ * operations. Placing and removing a stone are O(1) and keep the Zobrist hash
+ * of the position up to date, as well as the hashes of its rotations and
+ * reflections, for the canonical hash, and the candidate moves: the empty
+ * positions within a certain distance of any stone, tracked with a count of
+ * the stones around each position
+ * 
+ * @author Leticia Wanderley
+ */
+public class BitBoard {
+
+	public static final int EMPTY = 0;
+	public static final int BLACK = 1;
+	public static final int WHITE = 2;
+
+	/** Default number of stones in a row needed to win */
+	public static final int WIN_LENGTH = 5;
+
+	/** Largest number of rows or columns, a line must fit in a long mask */
+	public static final int MAX_SIZE = 64;
+
+	/** Default distance from the stones within which moves are generated */
+	public static final int RADIUS = 1;
+
+	public final int rows;
+	public final int cols;
+	/** Number of stones in a row needed to win */
+	public final int winLength;
+
+	private final byte[] cells;
+	// line masks indexed by side, then by line; the bit of a cell is its column
+	// (its row for the column masks)
+	private final long[][] rowLines;
+	private final long[][] colLines;
+	private final long[][] diagLines;
+	private final long[][] antiDiagLines;
+	private final Symmetry symmetry;
+	// hash of the image of the position under each symmetry, the first one
+	// being the hash of the position itself
+	private final long[] hashes;
+	private int stones;
+	private final int radius;
+	// number of stones within radius of each position
+	private final int[] neighbours;
+	// empty positions with neighbours, and the index of each one in the list
+	// (-1 if it is not there)
+	private final int[] candidates;
+	private final int[] candidateIndexes;
+	private int candidateCount;
+	private final WindowTable windows;
+
+	/**
+	 * Converts the board received by the player
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 */
+	public BitBoard(Color[][] board) {
+		this(board, RADIUS);
+	}
+
+	/**
+	 * Converts the board received by the player
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @param radius
+	 *            Distance from the stones within which positions are
+	 *            candidate moves
+	 */
+	public BitBoard(Color[][] board, int radius) {
+		this(board, radius, WIN_LENGTH);
+	}
+
+	/**
+	 * Converts the board received by the player
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @param radius
+	 *            Distance from the stones within which positions are
+	 *            candidate moves
+	 * @param winLength
+	 *            Number of stones in a row needed to win
+	 */
+	public BitBoard(Color[][] board, int radius, int winLength) {
+		if (board.length > MAX_SIZE || board[0].length > MAX_SIZE) {
+			throw new IllegalArgumentException("Boards are limited to " + MAX_SIZE + " rows and columns");
+		}
+		this.rows = board.length;
+		this.cols = board[0].length;
+		this.winLength = winLength;
+		this.windows = WindowTable.of(this.rows, this.cols, winLength + 1);
+		this.symmetry = Symmetry.of(this.rows, this.cols);
+		this.hashes = new long[this.symmetry.count()];
+		this.cells = new byte[this.rows * this.cols];
+		this.rowLines = new long[3][this.rows];
+		this.colLines = new long[3][this.cols];
+		this.diagLines = new long[3][this.rows + this.cols - 1];
+		this.antiDiagLines = new long[3][this.rows + this.cols - 1];
+		this.radius = radius;
+		this.neighbours = new int[this.rows * this.cols];
+		this.candidates = new int[this.rows * this.cols];
+		this.candidateIndexes = new int[this.rows * this.cols];
+		Arrays.fill(this.candidateIndexes, -1);
+		for (int row = 0; row < this.rows; row++) {
+			for (int col = 0; col < this.cols; col++) {
+				if (board[row][col] != null) {
+					int side = side(board[row][col]);
+					this.place(row, col, side);
+					for (int s = 0; s < this.hashes.length; s++) {
+						this.hashes[s] ^= this.symmetry.key(s, row * this.cols + col, side);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies a board, so another search thread can work on it
+	 * 
+	 * @param board
+	 *            Board to be copied
+	 */
+	public BitBoard(BitBoard board) {
+		this.rows = board.rows;
+		this.cols = board.cols;
+		this.winLength = board.winLength;
+		this.windows = board.windows;
+		this.cells = board.cells.clone();
+		this.rowLines = copy(board.rowLines);
+		this.colLines = copy(board.colLines);
+		this.diagLines = copy(board.diagLines);
+		this.antiDiagLines = copy(board.antiDiagLines);
+		this.symmetry = board.symmetry;
+		this.hashes = board.hashes.clone();
+		this.stones = board.stones;
+		this.radius = board.radius;
+		this.neighbours = board.neighbours.clone();
+		this.candidates = board.candidates.clone();
+		this.candidateIndexes = board.candidateIndexes.clone();
+		this.candidateCount = board.candidateCount;
+	}
+
+	/**
+	 * Returns the side index of a color
+	 * 
+	 * @param color
+	 *            Color of the stones
+	 * @return BLACK or WHITE
+	 */
+	public static int side(Color color) {
+		return Color.BLACK.equals(color) ? BLACK : WHITE;
+	}
+
+	/**
+	 * Returns the opposite side from the one sent as parameter
+	 * 
+	 * @param side
+	 *            BLACK or WHITE
+	 * @return WHITE if side is BLACK, BLACK if side is WHITE
+	 */
+	public static int opposite(int side) {
+		return 3 - side;
+	}
+
+	/**
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @return EMPTY, BLACK or WHITE
+	 */
+	public int get(int row, int col) {
+		return this.cells[row * this.cols + col];
+	}
+
+	/**
+	 * @param position
+	 *            Position, as row * cols + col
+	 * @return EMPTY, BLACK or WHITE
+	 */
+	public int get(int position) {
+		return this.cells[position];
+	}
+
+	/**
+	 * @return windows scored by the evaluation on this board size: winLength
+	 *         + 1 positions in a row
+	 */
+	public WindowTable windows() {
+		return this.windows;
+	}
+
+	/**
+	 * @return Zobrist hash of the stones on the board, toggled with
+	 *         Zobrist.SIDE on every move
+	 */
+	public long hash() {
+		return this.hashes[0];
+	}
+
+	/**
+	 * @param symmetry
+	 *            Symmetry, from 0 to symmetry().count() - 1
+	 * @return hash of the image of the position under the symmetry
+	 */
+	public long hash(int symmetry) {
+		return this.hashes[symmetry];
+	}
+
+	/**
+	 * @return lowest hash among the rotations and reflections of the
+	 *         position, the same for all of them
+	 */
+	public long canonicalHash() {
+		return this.hashes[Symmetry.canonical(this.hashes, this.hashes.length)];
+	}
+
+	/**
+	 * @return symmetry that turns the position into its canonical form,
+	 *         whose images of the moves are stored along with the canonical
+	 *         hash
+	 */
+	public int canonicalSymmetry() {
+		return Symmetry.canonical(this.hashes, this.hashes.length);
+	}
+
+	/**
+	 * @return symmetries of the board size
+	 */
+	public Symmetry symmetry() {
+		return this.symmetry;
+	}
+
+	/**
+	 * @return number of stones on the board
+	 */
+	public int stones() {
+		return this.stones;
+	}
+
+	/**
+	 * @return number of candidate moves
+	 */
+	public int candidateCount() {
+		return this.candidateCount;
+	}
+
+	/**
+	 * Returns the candidate moves, as row * cols + col, in no particular order.
+	 * Only the first candidateCount() are valid, and the array changes when a
+	 * stone is placed or removed
+	 * 
+	 * @return candidate moves
+	 */
+	public int[] candidates() {
+		return this.candidates;
+	}
+
+	/**
+	 * Places a stone on an empty position
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @param side
+	 *            BLACK or WHITE
+	 */
+	public void make(int row, int col, int side) {
+		this.place(row, col, side);
+		this.updateHashes(row * this.cols + col, side);
+	}
+
+	/**
+	 * Removes the stone placed on a position
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 */
+	public void unmake(int row, int col) {
+		int side = this.cells[row * this.cols + col];
+		this.cells[row * this.cols + col] = EMPTY;
+		this.rowLines[side][row] &= ~(1L << col);
+		this.colLines[side][col] &= ~(1L << row);
+		this.diagLines[side][row - col + this.cols - 1] &= ~(1L << col);
+		this.antiDiagLines[side][row + col] &= ~(1L << col);
+		this.updateHashes(row * this.cols + col, side);
+		this.stones--;
+		this.updateNeighbours(row, col, -1);
+		if (this.neighbours[row * this.cols + col] > 0) {
+			this.addCandidate(row * this.cols + col);
+		}
+	}
+
+	/**
+	 * Check if the position has any stones placed around it
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @return true if the position has any adjacent stones, false otherwise
+	 */
+	public boolean hasAdjacentStones(int row, int col) {
+		long mask = col == 0 ? 3L : 7L << (col - 1);
+		long occupied = this.occupied(row);
+		if (row > 0) {
+			occupied |= this.occupied(row - 1);
+		}
+		if (row < this.rows - 1) {
+			occupied |= this.occupied(row + 1);
+		}
+		return (occupied & mask) != 0;
+	}
+
+	/**
+	 * Counts the stones of a side within a distance of a position on each of
+	 * the row, column and diagonals through it, with one mask per line. A
+	 * threat needs a number of stones on one of the lines, so the threat
+	 * space search skips the positions of large boards that lack them
+	 * without playing them
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @param side
+	 *            BLACK or WHITE
+	 * @param distance
+	 *            Largest distance along the lines
+	 * @return largest number of stones of the side found on one line
+	 */
+	public int stonesInLines(int row, int col, int side, int distance) {
+		long cols = range(col - distance, col + distance);
+		int straight = Math.max(Long.bitCount(this.rowLines[side][row] & cols),
+				Long.bitCount(this.colLines[side][col] & range(row - distance, row + distance)));
+		int diagonal = Math.max(Long.bitCount(this.diagLines[side][row - col + this.cols - 1] & cols),
+				Long.bitCount(this.antiDiagLines[side][row + col] & cols));
+		return Math.max(straight, diagonal);
+	}
+
+	/**
+	 * Marks every position where stonesInLines may find a number of stones:
+	 * the positions within the distance of a stone of the side on a row,
+	 * column or diagonal that holds that many stones in all. Lines with fewer
+	 * stones are skipped with a popcount, so the threat space search visits a
+	 * few positions instead of the whole board
+	 * 
+	 * @param side
+	 *            BLACK or WHITE
+	 * @param distance
+	 *            Largest distance along the lines
+	 * @param stones
+	 *            Number of stones needed on one line
+	 * @param marks
+	 *            Filled with the marked columns of each row, bit col of
+	 *            marks[row]; occupied positions may be marked as well
+	 */
+	public void linePositions(int side, int distance, int stones, long[] marks) {
+		long allCols = range(0, this.cols - 1);
+		if (stones <= 0) {
+			Arrays.fill(marks, 0, this.rows, allCols);
+			return;
+		}
+		for (int row = 0; row < this.rows; row++) {
+			long line = this.rowLines[side][row];
+			marks[row] = Long.bitCount(line) >= stones ? dilate(line, distance) & allCols : 0;
+		}
+		for (int col = 0; col < this.cols; col++) {
+			long line = this.colLines[side][col];
+			if (Long.bitCount(line) >= stones) {
+				for (long bits = dilate(line, distance) & range(0, this.rows - 1); bits != 0; bits &= bits - 1) {
+					marks[Long.numberOfTrailingZeros(bits)] |= 1L << col;
+				}
+			}
+		}
+		for (int i = 0; i < this.rows + this.cols - 1; i++) {
+			// a diagonal holds row - col + cols - 1 == i, an anti diagonal
+			// row + col == i, and both are indexed by column
+			long line = this.diagLines[side][i];
+			if (Long.bitCount(line) >= stones) {
+				for (long bits = dilate(line, distance) & allCols; bits != 0; bits &= bits - 1) {
+					int col = Long.numberOfTrailingZeros(bits);
+					int row = i + col - this.cols + 1;
+					if (row >= 0 && row < this.rows) {
+						marks[row] |= 1L << col;
+					}
+				}
+			}
+			line = this.antiDiagLines[side][i];
+			if (Long.bitCount(line) >= stones) {
+				for (long bits = dilate(line, distance) & allCols; bits != 0; bits &= bits - 1) {
+					int col = Long.numberOfTrailingZeros(bits);
+					int row = i - col;
+					if (row >= 0 && row < this.rows) {
+						marks[row] |= 1L << col;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the stone on a position is part of a line of winLength stones
+	 * of its side
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @return true if the stone completes a winning line, false otherwise
+	 */
+	public boolean isWin(int row, int col) {
+		int side = this.get(row, col);
+		return side != EMPTY && (hasRun(this.rowLines[side][row]) || hasRun(this.colLines[side][col])
+				|| hasRun(this.diagLines[side][row - col + this.cols - 1])
+				|| hasRun(this.antiDiagLines[side][row + col]));
+	}
+
+	/**
+	 * Checks if placing a stone on an empty position would complete a line of
+	 * winLength stones, without placing it
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @param side
+	 *            BLACK or WHITE
+	 * @return true if the stone would win the game, false otherwise
+	 */
+	public boolean makesWin(int row, int col, int side) {
+		long bit = 1L << col;
+		return hasRun(this.rowLines[side][row] | bit) || hasRun(this.colLines[side][col] | 1L << row)
+				|| hasRun(this.diagLines[side][row - col + this.cols - 1] | bit)
+				|| hasRun(this.antiDiagLines[side][row + col] | bit);
+	}
+
+	private void place(int row, int col, int side) {
+		this.cells[row * this.cols + col] = (byte) side;
+		this.rowLines[side][row] |= 1L << col;
+		this.colLines[side][col] |= 1L << row;
+		this.diagLines[side][row - col + this.cols - 1] |= 1L << col;
+		this.antiDiagLines[side][row + col] |= 1L << col;
+		this.stones++;
+		this.removeCandidate(row * this.cols + col);
+		this.updateNeighbours(row, col, 1);
+	}
+
+	/**
+	 * Adds a stone to (or removes it from) the counts of the positions around
+	 * it, and updates the candidate moves whose count becomes or stops being
+	 * zero
+	 * 
+	 * @param row
+	 *            Row of the stone
+	 * @param col
+	 *            Column of the stone
+	 * @param delta
+	 *            1 when the stone is placed, -1 when it is removed
+	 */
+	private void updateNeighbours(int row, int col, int delta) {
+		int lastRow = Math.min(this.rows - 1, row + this.radius);
+		int lastCol = Math.min(this.cols - 1, col + this.radius);
+		for (int r = Math.max(0, row - this.radius); r <= lastRow; r++) {
+			for (int c = Math.max(0, col - this.radius); c <= lastCol; c++) {
+				int position = r * this.cols + c;
+				if (position == row * this.cols + col) {
+					continue;
+				}
+				this.neighbours[position] += delta;
+				if (this.cells[position] == EMPTY) {
+					if (delta > 0 && this.neighbours[position] == 1) {
+						this.addCandidate(position);
+					} else if (delta < 0 && this.neighbours[position] == 0) {
+						this.removeCandidate(position);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Toggles a stone, and the side to move, in the hash of every image of the
+	 * position
+	 * 
+	 * @param position
+	 *            Position of the stone, as row * cols + col
+	 * @param side
+	 *            Side of the stone
+	 */
+	private void updateHashes(int position, int side) {
+		for (int s = 0; s < this.hashes.length; s++) {
+			this.hashes[s] ^= this.symmetry.key(s, position, side) ^ Zobrist.SIDE;
+		}
+	}
+
+	private void addCandidate(int position) {
+		this.candidateIndexes[position] = this.candidateCount;
+		this.candidates[this.candidateCount++] = position;
+	}
+
+	private void removeCandidate(int position) {
+		int index = this.candidateIndexes[position];
+		if (index >= 0) {
+			// the last candidate takes the place of the removed one
+			int last = this.candidates[--this.candidateCount];
+			this.candidates[index] = last;
+			this.candidateIndexes[last] = index;
+			this.candidateIndexes[position] = -1;
+		}
+	}
+
+	private static long[][] copy(long[][] lines) {
+		long[][] copy = new long[lines.length][];
+		for (int side = 0; side < lines.length; side++) {
+			copy[side] = lines[side].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * @param first
+	 *            First bit, may be negative
+	 * @param last
+	 *            Last bit, may be past the last bit of a long
+	 * @return mask of the bits from first to last that fit in a long
+	 */
+	private static long range(int first, int last) {
+		return -1L >>> (63 - Math.min(last, 63)) & -1L << Math.max(first, 0);
+	}
+
+	/**
+	 * @param line
+	 *            Stones of a line, as bits
+	 * @param distance
+	 *            Number of bits to spread each stone to, on each side
+	 * @return bits within the distance of a stone of the line
+	 */
+	private static long dilate(long line, int distance) {
+		long dilated = line;
+		for (int k = 1; k <= distance; k++) {
+			dilated |= line << k | line >>> k;
+		}
+		return dilated;
+	}
+
+	private long occupied(int row) {
+		return this.rowLines[BLACK][row] | this.rowLines[WHITE][row];
+	}
+
+	private boolean hasRun(long line) {
+		for (int k = 1; k < this.winLength && line != 0; k++) {
+			line &= line >>> 1;
+		}
+		return line != 0;
+	}
+}
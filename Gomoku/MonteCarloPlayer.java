@@ -0,0 +1,294 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This gomoku player is an implementation of Monte Carlo tree search with
+ * UCT, an alternative to the alpha-beta players whose cost grows less with
+ * the size of the board. With more than one thread each thread grows its own
+ * tree from the same position (root parallelization) and the visits of the
+ * root moves are added up before choosing the most visited one. The trees
+ * are kept between moves: when the opponent's reply is the only change to
+ * the board, each tree moves its root down to the position and keeps what
+ * it searched for it
+ * 
+ * @author Leticia Wanderley
+ */
+public class MonteCarloPlayer extends GomokuPlayer {
+
+	private final int TREE_MEGABYTES = 64;
+	private final long TIME_LIMIT = 1000;
+	/** Fraction of the time limit given to the threat space search */
+	private final int THREAT_TIME_DIVISOR = 10;
+
+	private final int treeMegabytes;
+	private MonteCarloTree[] trees = new MonteCarloTree[0];
+	private int threads = 1;
+	private ForkJoinPool pool;
+	private long timeLimit = TIME_LIMIT;
+	private long maxPlayouts = Long.MAX_VALUE;
+	private int winLength = BitBoard.WIN_LENGTH;
+	private Random random = new Random();
+	// board after the last move of the player, to recognize the reply
+	private Color[][] lastBoard;
+	private long playouts;
+
+	public MonteCarloPlayer() {
+		this.treeMegabytes = TREE_MEGABYTES;
+	}
+
+	/**
+	 * @param treeMegabytes
+	 *            Memory budget of the tree of each thread
+	 */
+	public MonteCarloPlayer(int treeMegabytes) {
+		this.treeMegabytes = treeMegabytes;
+	}
+
+	/**
+	 * Sets the wall-clock time the player may spend on each move
+	 * 
+	 * @param millis
+	 *            Time limit in milliseconds
+	 */
+	public void setTimeLimit(long millis) {
+		this.timeLimit = millis;
+	}
+
+	/**
+	 * Limits the playouts of each move, so a move can be searched the same
+	 * way regardless of the time limit
+	 * 
+	 * @param playouts
+	 *            Playouts of each thread
+	 */
+	public void setMaxPlayouts(long playouts) {
+		this.maxPlayouts = playouts;
+	}
+
+	/**
+	 * Sets the number of threads that grow trees in parallel
+	 * 
+	 * @param threads
+	 *            Number of threads, 1 to search on the calling thread
+	 */
+	public void setThreads(int threads) {
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+		this.threads = threads;
+		this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		this.trees = new MonteCarloTree[0];
+	}
+
+	/**
+	 * Sets the number of stones in a row needed to win
+	 * 
+	 * @param winLength
+	 *            Length of the winning lines
+	 */
+	public void setWinLength(int winLength) {
+		this.winLength = winLength;
+		this.lastBoard = null;
+	}
+
+	/**
+	 * Seeds the playouts, so that games can be replayed
+	 * 
+	 * @param seed
+	 *            Seed of the random choices
+	 */
+	public void setSeed(long seed) {
+		this.random = new Random(seed);
+		this.trees = new MonteCarloTree[0];
+	}
+
+	/**
+	 * @return number of playouts of the last search, of all threads
+	 */
+	public long getPlayouts() {
+		return this.playouts;
+	}
+
+	/**
+	 * Chooses a move: a forced win found by the threat space search if there
+	 * is one, else the most visited move of the trees
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @param me
+	 *            Color of the player
+	 * @return move chosen
+	 */
+	@Override
+	public Move chooseMove(Color[][] board, Color me) {
+		final long deadline = System.nanoTime() + this.timeLimit * 1000000L;
+		BitBoard bitBoard = new BitBoard(board, BitBoard.RADIUS, this.winLength);
+		int side = BitBoard.side(me);
+		this.playouts = 0;
+		if (bitBoard.stones() == 0) {
+			this.lastBoard = null;
+			return new Move(bitBoard.rows / 2, bitBoard.cols / 2);
+		}
+		if (bitBoard.candidateCount() == 0) {
+			// the board is full, no move has a value, any move will do
+			this.lastBoard = null;
+			return new Move(this.randInt(bitBoard.rows / 4, bitBoard.rows - 1 - bitBoard.rows / 4),
+					this.randInt(bitBoard.cols / 4, bitBoard.cols - 1 - bitBoard.cols / 4));
+		}
+		this.prepareTrees(board, bitBoard, side);
+		int move = new ThreatSpaceSearch(bitBoard, side,
+				System.nanoTime() + this.timeLimit * 1000000L / THREAT_TIME_DIVISOR).findWin();
+		if (move < 0) {
+			move = this.search(deadline);
+		}
+		for (MonteCarloTree tree : this.trees) {
+			tree.advance(move);
+		}
+		this.lastBoard = copy(board);
+		this.lastBoard[move / bitBoard.cols][move % bitBoard.cols] = me;
+		return new Move(move / bitBoard.cols, move % bitBoard.cols);
+	}
+
+	/**
+	 * Brings the trees to the position: moves their roots down by the
+	 * opponent's reply if the board only differs from the one left by the
+	 * player's last move by that reply, else starts new trees
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @param bitBoard
+	 *            Same board, as a BitBoard
+	 * @param side
+	 *            Side of the player
+	 */
+	private void prepareTrees(Color[][] board, BitBoard bitBoard, int side) {
+		int reply = this.reply(board);
+		if (this.trees.length != this.threads) {
+			this.trees = new MonteCarloTree[this.threads];
+			for (int t = 0; t < this.threads; t++) {
+				this.trees[t] = new MonteCarloTree(this.treeMegabytes, new Random(this.random.nextLong()));
+			}
+			reply = -1;
+		}
+		for (MonteCarloTree tree : this.trees) {
+			if (reply >= 0) {
+				tree.advance(reply);
+			} else {
+				tree.reset(bitBoard, side);
+			}
+		}
+	}
+
+	/**
+	 * @param board
+	 *            Representation of the game board
+	 * @return position of the only stone added since the player's last move,
+	 *         as row * cols + col, or -1 if the board changed in other ways
+	 */
+	private int reply(Color[][] board) {
+		if (this.lastBoard == null || this.lastBoard.length != board.length
+				|| this.lastBoard[0].length != board[0].length) {
+			return -1;
+		}
+		int reply = -1;
+		for (int row = 0; row < board.length; row++) {
+			for (int col = 0; col < board[row].length; col++) {
+				if (board[row][col] == this.lastBoard[row][col]) {
+					continue;
+				}
+				if (reply >= 0 || this.lastBoard[row][col] != null) {
+					return -1;
+				}
+				reply = row * board[row].length + col;
+			}
+		}
+		return reply;
+	}
+
+	/**
+	 * Grows the trees until the deadline, on the calling thread or on the
+	 * pool, and chooses the move whose visits add up to the most. The board
+	 * of the trees must have candidate moves
+	 * 
+	 * @param deadline
+	 *            System.nanoTime() after which the search stops
+	 * @return move chosen, as row * cols + col
+	 */
+	private int search(final long deadline) {
+		if (this.pool == null) {
+			for (MonteCarloTree tree : this.trees) {
+				this.playouts += tree.search(deadline, this.maxPlayouts);
+			}
+		} else {
+			List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+			for (final MonteCarloTree tree : this.trees) {
+				tasks.add(new Callable<Long>() {
+					@Override
+					public Long call() {
+						return tree.search(deadline, MonteCarloPlayer.this.maxPlayouts);
+					}
+				});
+			}
+			try {
+				for (Future<Long> task : this.pool.invokeAll(tasks)) {
+					this.playouts += task.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		BitBoard board = this.trees[0].board();
+		int cells = board.rows * board.cols;
+		long[] visits = new long[cells];
+		double[] wins = new double[cells];
+		for (MonteCarloTree tree : this.trees) {
+			for (int i = 0; i < tree.rootChildren(); i++) {
+				visits[tree.rootMove(i)] += tree.rootVisits(i);
+				wins[tree.rootMove(i)] += tree.rootWins(i);
+			}
+		}
+		// most visited, the better result on ties
+		int best = board.candidates()[0];
+		for (int move = 0; move < cells; move++) {
+			if (visits[move] > visits[best]
+					|| (visits[move] == visits[best] && visits[move] > 0 && wins[move] > wins[best])) {
+				best = move;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Randomizes an integer inside the range in the parameters
+	 * 
+	 * @param min
+	 *            minimum range value
+	 * @param max
+	 *            maximum range value
+	 * @return random number between minimum and max
+	 */
+	private int randInt(int min, int max) {
+		return this.random.nextInt((max - min) + 1) + min;
+	}
+
+	/**
+	 * @param board
+	 *            Representation of the game board
+	 * @return copy of the board
+	 */
+	private static Color[][] copy(Color[][] board) {
+		Color[][] copy = new Color[board.length][];
+		for (int row = 0; row < board.length; row++) {
+			copy[row] = board[row].clone();
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,448 @@
+import java.util.Random;
+
+/**
+ * Search tree of the Monte Carlo tree search, grown by one thread. Nodes are
+ * kept in a pool of parallel arrays allocated once, the children of a node in
+ * consecutive slots, so growing the tree allocates nothing. Children are
+ * selected with UCT plus a progressive bias towards the moves the threat
+ * weights of ThreatModification favour, which fades as the move is visited.
+ * The playouts play a move that wins at once, else one that stops the
+ * opponent from winning at once, else a random candidate move. When the
+ * game moves on, the subtree of the new position is copied to the front of
+ * a second pool and the pools are swapped, so what was searched for it is
+ * kept
+ * 
+ * @author Leticia Wanderley
+ */
+public class MonteCarloTree {
+
+	/** Bytes of a node in both pools */
+	static final int NODE_BYTES = 2 * (4 + 4 + 4 + 4 + 4 + 4 + 1);
+
+	private static final int OPEN = 0;
+	/** The move into the node wins the game */
+	private static final int WON = 1;
+	/** The move into the node fills the board */
+	private static final int DRAWN = 2;
+
+	/** Weight of the exploration term of UCT */
+	private final double EXPLORATION = 0.7;
+	/** Weight of the threat prior of the moves */
+	private final double BIAS = 1.0;
+
+	private Pool nodes;
+	private Pool spare;
+	// nodes of the old pool copied to each slot of the new one
+	private final int[] origins;
+	private BitBoard board;
+	private int side;
+	private final Random random;
+	// moves made from the root by the current iteration, and its path
+	private int[] made;
+	private int[] path;
+	private double[] scores;
+
+	/**
+	 * Nodes of a tree, one array per field
+	 */
+	private static final class Pool {
+		final int[] moves;
+		/** First child of each node, -1 until the node is expanded */
+		final int[] firstChild;
+		final int[] childCount;
+		final int[] visits;
+		/** Sum of the results of the visits, for the side that moved into the node */
+		final float[] wins;
+		/** Threat prior of the move, from 0 to 1 among its siblings */
+		final float[] priors;
+		final byte[] states;
+		int size;
+
+		Pool(int capacity) {
+			this.moves = new int[capacity];
+			this.firstChild = new int[capacity];
+			this.childCount = new int[capacity];
+			this.visits = new int[capacity];
+			this.wins = new float[capacity];
+			this.priors = new float[capacity];
+			this.states = new byte[capacity];
+		}
+
+		/**
+		 * Takes a slot for a new node
+		 * 
+		 * @param move
+		 *            Move into the node, as row * cols + col
+		 * @param prior
+		 *            Threat prior of the move
+		 * @return the node
+		 */
+		int add(int move, float prior) {
+			int node = this.size++;
+			this.moves[node] = move;
+			this.firstChild[node] = -1;
+			this.childCount[node] = 0;
+			this.visits[node] = 0;
+			this.wins[node] = 0;
+			this.priors[node] = prior;
+			this.states[node] = OPEN;
+			return node;
+		}
+
+		/**
+		 * Copies a node of another pool to a new slot
+		 * 
+		 * @param from
+		 *            Pool of the node
+		 * @param node
+		 *            Node to be copied
+		 * @return the new node, not expanded
+		 */
+		int copy(Pool from, int node) {
+			int copy = this.add(from.moves[node], from.priors[node]);
+			this.visits[copy] = from.visits[node];
+			this.wins[copy] = from.wins[node];
+			this.states[copy] = from.states[node];
+			return copy;
+		}
+	}
+
+	/**
+	 * @param megabytes
+	 *            Memory budget of the tree
+	 * @param random
+	 *            Chooses the moves of the playouts
+	 */
+	public MonteCarloTree(int megabytes, Random random) {
+		int capacity = (int) Math.min(((long) megabytes << 20) / (NODE_BYTES + 4), Integer.MAX_VALUE - 8);
+		this.nodes = new Pool(capacity);
+		this.spare = new Pool(capacity);
+		this.origins = new int[capacity];
+		this.random = random;
+	}
+
+	/**
+	 * Forgets the tree and starts a new one
+	 * 
+	 * @param board
+	 *            Position of the root, copied
+	 * @param side
+	 *            Side to move on the root
+	 */
+	public void reset(BitBoard board, int side) {
+		this.board = new BitBoard(board);
+		this.side = side;
+		int cells = board.rows * board.cols;
+		this.made = new int[cells + 1];
+		this.path = new int[cells + 2];
+		this.scores = new double[cells];
+		this.nodes.size = 0;
+		this.nodes.add(-1, 0);
+	}
+
+	/**
+	 * Moves the root to the child of a move, keeping its subtree, or to a new
+	 * node if the move was never searched
+	 * 
+	 * @param move
+	 *            Move played on the root, as row * cols + col
+	 */
+	public void advance(int move) {
+		int child = -1;
+		int first = this.nodes.firstChild[0];
+		for (int i = 0; first >= 0 && i < this.nodes.childCount[0]; i++) {
+			if (this.nodes.moves[first + i] == move) {
+				child = first + i;
+			}
+		}
+		this.board.make(move / this.board.cols, move % this.board.cols, this.side);
+		this.side = BitBoard.opposite(this.side);
+		Pool from = this.nodes;
+		Pool to = this.spare;
+		to.size = 0;
+		if (child < 0) {
+			to.add(-1, 0);
+		} else {
+			// breadth first, the copied nodes are the queue
+			this.origins[to.copy(from, child)] = child;
+			to.moves[0] = -1;
+			for (int node = 0; node < to.size; node++) {
+				int origin = this.origins[node];
+				if (from.firstChild[origin] >= 0) {
+					to.firstChild[node] = to.size;
+					to.childCount[node] = from.childCount[origin];
+					for (int i = 0; i < from.childCount[origin]; i++) {
+						this.origins[to.copy(from, from.firstChild[origin] + i)] = from.firstChild[origin] + i;
+					}
+				}
+			}
+		}
+		this.nodes = to;
+		this.spare = from;
+	}
+
+	/**
+	 * Runs iterations of the search until the deadline or the maximum number
+	 * of playouts
+	 * 
+	 * @param deadline
+	 *            System.nanoTime() after which the search stops
+	 * @param playouts
+	 *            Maximum number of playouts
+	 * @return number of playouts run
+	 */
+	public long search(long deadline, long playouts) {
+		long count = 0;
+		while (count < playouts && ((count & 0xF) != 0 || System.nanoTime() < deadline)) {
+			this.iterate();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return position of the root
+	 */
+	public BitBoard board() {
+		return this.board;
+	}
+
+	/**
+	 * @return number of nodes of the tree
+	 */
+	public int size() {
+		return this.nodes.size;
+	}
+
+	/**
+	 * @return number of children of the root, 0 if it is not expanded
+	 */
+	public int rootChildren() {
+		return this.nodes.firstChild[0] < 0 ? 0 : this.nodes.childCount[0];
+	}
+
+	/**
+	 * @param i
+	 *            Index of the child of the root
+	 * @return move into the child, as row * cols + col
+	 */
+	public int rootMove(int i) {
+		return this.nodes.moves[this.nodes.firstChild[0] + i];
+	}
+
+	/**
+	 * @param i
+	 *            Index of the child of the root
+	 * @return number of visits of the child
+	 */
+	public int rootVisits(int i) {
+		return this.nodes.visits[this.nodes.firstChild[0] + i];
+	}
+
+	/**
+	 * @param i
+	 *            Index of the child of the root
+	 * @return sum of the results of the visits of the child, for the side to
+	 *         move on the root
+	 */
+	public double rootWins(int i) {
+		return this.nodes.wins[this.nodes.firstChild[0] + i];
+	}
+
+	/**
+	 * One iteration: selects a path down the tree, expands its last node,
+	 * plays the game out from there and adds the result to the nodes of the
+	 * path
+	 */
+	private void iterate() {
+		Pool pool = this.nodes;
+		int node = 0;
+		int side = this.side;
+		int depth = 0;
+		int winner;
+		this.path[0] = 0;
+		while (true) {
+			if (pool.states[node] != OPEN) {
+				winner = pool.states[node] == WON ? BitBoard.opposite(side) : BitBoard.EMPTY;
+				break;
+			}
+			if (pool.firstChild[node] < 0 && ((node != 0 && pool.visits[node] == 0) || !this.expand(node, side))) {
+				winner = this.playout(side, depth);
+				break;
+			}
+			node = this.select(node);
+			int row = pool.moves[node] / this.board.cols;
+			int col = pool.moves[node] % this.board.cols;
+			this.board.make(row, col, side);
+			this.made[depth++] = pool.moves[node];
+			this.path[depth] = node;
+			if (pool.visits[node] == 0) {
+				if (this.board.isWin(row, col)) {
+					pool.states[node] = WON;
+				} else if (this.board.candidateCount() == 0) {
+					pool.states[node] = DRAWN;
+				}
+			}
+			side = BitBoard.opposite(side);
+		}
+		// the side that moved into the nodes alternates, starting with the
+		// side to move on the root for its children
+		int mover = BitBoard.opposite(this.side);
+		for (int d = 0; d <= depth; d++) {
+			int n = this.path[d];
+			pool.visits[n]++;
+			pool.wins[n] += winner == mover ? 1f : (winner == BitBoard.EMPTY ? 0.5f : 0f);
+			mover = BitBoard.opposite(mover);
+		}
+		while (depth > 0) {
+			int move = this.made[--depth];
+			this.board.unmake(move / this.board.cols, move % this.board.cols);
+		}
+	}
+
+	/**
+	 * Chooses the child to visit: unvisited children first, in the order of
+	 * their priors, then the one with the highest UCT value plus prior bias
+	 * 
+	 * @param node
+	 *            Expanded node
+	 * @return child to visit
+	 */
+	private int select(int node) {
+		Pool pool = this.nodes;
+		int first = pool.firstChild[node];
+		int best = first;
+		double bestValue = -Double.MAX_VALUE;
+		double logVisits = Math.log(Math.max(1, pool.visits[node]));
+		for (int child = first; child < first + pool.childCount[node]; child++) {
+			int visits = pool.visits[child];
+			double value;
+			if (visits == 0) {
+				value = Double.MAX_VALUE / 2 + pool.priors[child];
+			} else {
+				value = pool.wins[child] / visits + EXPLORATION * Math.sqrt(logVisits / visits)
+						+ BIAS * pool.priors[child] / (visits + 1);
+			}
+			if (value > bestValue) {
+				bestValue = value;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Adds a child to a node for each candidate move, with the prior given
+	 * by the threats the move makes and blocks
+	 * 
+	 * @param node
+	 *            Node on the current position of the board
+	 * @param side
+	 *            Side to move
+	 * @return true if the node was expanded, false if the pool is full
+	 */
+	private boolean expand(int node, int side) {
+		Pool pool = this.nodes;
+		int count = this.board.candidateCount();
+		if (pool.size + count > pool.moves.length) {
+			return false;
+		}
+		int[] candidates = this.board.candidates();
+		double max = 0;
+		for (int i = 0; i < count; i++) {
+			this.scores[i] = Math.log1p(this.threatScore(candidates[i], side));
+			max = Math.max(max, this.scores[i]);
+		}
+		pool.firstChild[node] = pool.size;
+		pool.childCount[node] = count;
+		for (int i = 0; i < count; i++) {
+			pool.add(candidates[i], max == 0 ? 0f : (float) (this.scores[i] / max));
+		}
+		return true;
+	}
+
+	/**
+	 * Adds up the weights of the threats a move makes for the side and of the
+	 * threats of the opponent it blocks, in the windows through the move
+	 * 
+	 * @param position
+	 *            Empty position, as row * cols + col
+	 * @param side
+	 *            Side to move
+	 * @return weight of the move
+	 */
+	private double threatScore(int position, int side) {
+		WindowTable windows = this.board.windows();
+		int opponent = BitBoard.opposite(side);
+		double score = 0;
+		for (int d = 0; d < 4; d++) {
+			for (int k = 0; k < windows.count(position, d); k++) {
+				ThreatModification.Threat blocked = ThreatModification.classify(windows.start(position, d, k), d,
+						this.board, opponent);
+				if (blocked != null) {
+					score += blocked.getWeight();
+				}
+			}
+		}
+		this.board.make(position / this.board.cols, position % this.board.cols, side);
+		for (int d = 0; d < 4; d++) {
+			for (int k = 0; k < windows.count(position, d); k++) {
+				ThreatModification.Threat made = ThreatModification.classify(windows.start(position, d, k), d,
+						this.board, side);
+				if (made != null) {
+					score += made.getWeight();
+				}
+			}
+		}
+		this.board.unmake(position / this.board.cols, position % this.board.cols);
+		return score;
+	}
+
+	/**
+	 * Plays the game out from the current position of the board, then takes
+	 * the moves back
+	 * 
+	 * @param side
+	 *            Side to move
+	 * @param depth
+	 *            Number of moves made from the root so far
+	 * @return side that won, BitBoard.EMPTY for a draw
+	 */
+	private int playout(int side, int depth) {
+		BitBoard board = this.board;
+		int start = depth;
+		int winner = BitBoard.EMPTY;
+		while (board.candidateCount() > 0) {
+			int count = board.candidateCount();
+			int[] candidates = board.candidates();
+			int opponent = BitBoard.opposite(side);
+			int move = -1;
+			int block = -1;
+			for (int i = 0; i < count && move < 0; i++) {
+				int row = candidates[i] / board.cols;
+				int col = candidates[i] % board.cols;
+				if (board.makesWin(row, col, side)) {
+					move = candidates[i];
+				} else if (block < 0 && board.makesWin(row, col, opponent)) {
+					block = candidates[i];
+				}
+			}
+			if (move >= 0) {
+				winner = side;
+			} else {
+				move = block >= 0 ? block : candidates[this.random.nextInt(count)];
+			}
+			board.make(move / board.cols, move % board.cols, side);
+			this.made[depth++] = move;
+			if (winner != BitBoard.EMPTY) {
+				break;
+			}
+			side = opponent;
+		}
+		while (depth > start) {
+			int move = this.made[--depth];
+			board.unmake(move / board.cols, move % board.cols);
+		}
+		return winner;
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Orders the moves of each node of the search so that the moves most likely
+ * to cause a cutoff are searched first: the best move stored in the
+ * transposition table, moves that win, moves that block a win of the
+ * opponent, the killer moves of the ply and then the remaining moves by their
+ * history score. The moves are scored once when they are generated and then
+ * selected one at a time, so a node cut off after a few moves does not pay
+ * for sorting all of them
+ * 
+ * @author Leticia Wanderley
+ */
+public class MoveOrdering {
+
+	private static final int HASH_MOVE = 1 << 30;
+	private static final int WIN = 1 << 29;
+	private static final int BLOCK = 1 << 28;
+	private static final int KILLER = 1 << 27;
+	private static final int MAX_HISTORY = KILLER - 1;
+
+	private final int cells;
+	// moves and their scores for each ply, reused by every node of that ply,
+	// and the number of moves generated
+	private final int[][] moves;
+	private final int[][] scores;
+	private final int[] counts;
+	// positions that may complete a line of each side, from
+	// BitBoard.linePositions, one mask of columns per row
+	private final long[][] wins;
+	// two killer moves per ply, the most recent one first
+	private final int[][] killers;
+	private final int[] history;
+
+	/**
+	 * @param cells
+	 *            Number of positions of the board
+	 * @param maxPly
+	 *            Maximum depth of the search
+	 */
+	public MoveOrdering(int cells, int maxPly) {
+		this.cells = cells;
+		this.moves = new int[maxPly][cells];
+		this.scores = new int[maxPly][cells];
+		this.counts = new int[maxPly];
+		this.wins = new long[3][BitBoard.MAX_SIZE];
+		this.killers = new int[maxPly][2];
+		this.history = new int[cells];
+		this.clear();
+	}
+
+	/**
+	 * @return number of positions of the board the ordering was created for
+	 */
+	public int size() {
+		return this.cells;
+	}
+
+	/**
+	 * Prepares the ordering for the search of a new move: killers are
+	 * forgotten, since plies now refer to other positions, and history scores
+	 * are halved
+	 */
+	public void clear() {
+		for (int ply = 0; ply < this.killers.length; ply++) {
+			this.killers[ply][0] = -1;
+			this.killers[ply][1] = -1;
+		}
+		for (int move = 0; move < this.cells; move++) {
+			this.history[move] >>= 1;
+		}
+	}
+
+	/**
+	 * Generates the moves of a node (the candidate moves kept by the board,
+	 * empty positions near the stones) and scores them. Only the positions
+	 * next to a line that holds enough stones are checked for wins and
+	 * blocks
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @param ply
+	 *            Distance of the node from the root
+	 * @param side
+	 *            Side to move
+	 * @param hashMove
+	 *            Best move stored in the transposition table, or -1 if none
+	 * @return number of moves, which are read best first with select
+	 */
+	public int generate(BitBoard board, int ply, int side, int hashMove) {
+		int[] moves = this.moves[ply];
+		int[] scores = this.scores[ply];
+		int opponent = BitBoard.opposite(side);
+		long[] wins = this.wins[side];
+		long[] blocks = this.wins[opponent];
+		board.linePositions(side, board.winLength - 1, board.winLength - 1, wins);
+		board.linePositions(opponent, board.winLength - 1, board.winLength - 1, blocks);
+		int[] candidates = board.candidates();
+		int count = board.candidateCount();
+		for (int c = 0; c < count; c++) {
+			int move = candidates[c];
+			int row = move / board.cols;
+			int col = move % board.cols;
+			int score;
+			if (move == hashMove) {
+				score = HASH_MOVE;
+			} else if ((wins[row] >>> col & 1) != 0 && board.makesWin(row, col, side)) {
+				score = WIN;
+			} else if ((blocks[row] >>> col & 1) != 0 && board.makesWin(row, col, opponent)) {
+				score = BLOCK;
+			} else if (move == this.killers[ply][0]) {
+				score = KILLER + 1;
+			} else if (move == this.killers[ply][1]) {
+				score = KILLER;
+			} else {
+				score = this.history[move];
+			}
+			moves[c] = move;
+			scores[c] = score;
+		}
+		this.counts[ply] = count;
+		return count;
+	}
+
+	/**
+	 * Selects the best of the moves of a node not yet searched: the one with
+	 * the highest score, the first in board order among equal scores. The
+	 * moves before it are the ones already selected, best first
+	 * 
+	 * @param ply
+	 *            Distance of the node from the root
+	 * @param i
+	 *            Number of moves already selected
+	 * @return move, as row * cols + col
+	 */
+	public int select(int ply, int i) {
+		int[] moves = this.moves[ply];
+		int[] scores = this.scores[ply];
+		int best = i;
+		for (int j = i + 1; j < this.counts[ply]; j++) {
+			if (scores[j] > scores[best] || scores[j] == scores[best] && moves[j] < moves[best]) {
+				best = j;
+			}
+		}
+		int move = moves[best];
+		int score = scores[best];
+		moves[best] = moves[i];
+		scores[best] = scores[i];
+		moves[i] = move;
+		scores[i] = score;
+		return move;
+	}
+
+	/**
+	 * Records a move that caused a cutoff
+	 * 
+	 * @param ply
+	 *            Distance of the node from the root
+	 * @param move
+	 *            Move that caused the cutoff
+	 * @param depth
+	 *            Remaining depth of the node, deeper cutoffs weigh more
+	 */
+	public void cutoff(int ply, int move, int depth) {
+		if (this.killers[ply][0] != move) {
+			this.killers[ply][1] = this.killers[ply][0];
+			this.killers[ply][0] = move;
+		}
+		this.history[move] += depth * depth;
+		if (this.history[move] > MAX_HISTORY) {
+			for (int m = 0; m < this.cells; m++) {
+				this.history[m] >>= 1;
+			}
+		}
+	}
+}
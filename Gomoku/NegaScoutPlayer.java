@@ -0,0 +1,23 @@
+/**
+ * Same evaluation as Player150721453, searched with principal variation
+ * search (negaScout) instead of the maxValue/minValue alpha-beta pair, so
+ * both searches can play side by side and their node counts be compared
+ * 
+ * @author Leticia Wanderley
+ */
+public class NegaScoutPlayer extends Player150721453 {
+
+	public NegaScoutPlayer() {
+		super();
+		this.setPrincipalVariationSearch(true);
+	}
+
+	/**
+	 * @param tableMegabytes
+	 *            Memory budget of the transposition table
+	 */
+	public NegaScoutPlayer(int tableMegabytes) {
+		super(tableMegabytes);
+		this.setPrincipalVariationSearch(true);
+	}
+}
@@ -0,0 +1,325 @@
+import java.awt.Color;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Book of opening moves, read from a file mapped in memory. Each entry holds
+ * the Zobrist hash of a position, a move and its weight, sorted by hash so a
+ * lookup is a binary search. Positions are hashed with the Zobrist keys,
+ * as the search hashes them, so a book must be generated again when the
+ * keys change. Positions are stored in a canonical orientation: the one,
+ * among the 8 rotations and reflections of the board, with the lowest hash,
+ * so the book answers for every orientation of a position it knows. The
+ * book is generated offline by the main method, with deep searches of
+ * Player150721453, and the players only read it when they are given it
+ * with setOpeningBook
+ * 
+ * Usage: java OpeningBook [file] [plies] [depth] [size]
+ * 
+ * @author Leticia Wanderley
+ */
+public class OpeningBook {
+
+	/** Name of the book file shared() loads from the working directory */
+	public static final String FILE = "opening.book";
+
+	// books of version 1 were hashed with keys of their own and are rejected
+	private static final int MAGIC = 0x474B4232; // "GKB2"
+	private static final int HEADER_BYTES = 16;
+	private static final int ENTRY_BYTES = 12;
+	private static final int PLIES = 5;
+	private static final int DEPTH = 9;
+
+	private static OpeningBook shared;
+	private static boolean sharedLoaded;
+
+	private final ByteBuffer entries;
+	private final int rows;
+	private final int cols;
+	private final int count;
+
+	/**
+	 * @param entries
+	 *            Contents of a book file
+	 * @throws IOException
+	 *             if the contents are not a book
+	 */
+	private OpeningBook(ByteBuffer entries) throws IOException {
+		if (entries.capacity() < HEADER_BYTES || entries.getInt(0) != MAGIC) {
+			throw new IOException("Not an opening book");
+		}
+		this.rows = entries.getInt(4);
+		this.cols = entries.getInt(8);
+		this.count = entries.getInt(12);
+		if (entries.capacity() < HEADER_BYTES + this.count * ENTRY_BYTES) {
+			throw new IOException("Truncated opening book");
+		}
+		this.entries = entries;
+	}
+
+	/**
+	 * Maps a book file in memory
+	 * 
+	 * @param file
+	 *            Book file
+	 * @return the book
+	 * @throws IOException
+	 *             if the file cannot be read or is not a book
+	 */
+	public static OpeningBook load(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			// the mapping stays valid after the file is closed
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Returns the book in the working directory, loaded the first time it is
+	 * asked for and shared by every player it is given to
+	 * 
+	 * @return the book, or null if there is no readable book file
+	 */
+	public static synchronized OpeningBook shared() {
+		if (!sharedLoaded) {
+			sharedLoaded = true;
+			File file = new File(FILE);
+			if (file.isFile()) {
+				try {
+					shared = load(file);
+				} catch (IOException e) {
+					System.err.println("Opening book not loaded: " + e.getMessage());
+				}
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * @return number of entries of the book
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Looks a position up in the book
+	 * 
+	 * @param board
+	 *            Representation of the state of the game, as converted from
+	 *            the board received by the player
+	 * @param random
+	 *            Chooses among the moves of the position, by weight
+	 * @return a book move for the position, or null if it is not in the book
+	 */
+	public Move lookup(BitBoard board, Random random) {
+		if (board.rows != this.rows || board.cols != this.cols) {
+			return null;
+		}
+		int symmetry = board.canonicalSymmetry();
+		long key = board.hash(symmetry);
+		int first = this.find(key);
+		if (first < 0) {
+			return null;
+		}
+		int total = 0;
+		int last = first;
+		for (; last < this.count && this.key(last) == key; last++) {
+			total += this.weight(last);
+		}
+		int pick = random.nextInt(total);
+		for (int i = first; i < last; i++) {
+			pick -= this.weight(i);
+			if (pick < 0) {
+				int position = board.symmetry().preimage(symmetry, this.move(i));
+				if (board.get(position) != BitBoard.EMPTY) {
+					return null;
+				}
+				return new Move(position / this.cols, position % this.cols);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the first entry of a position
+	 * 
+	 * @param key
+	 *            Canonical hash of the position
+	 * @return index of the entry, -1 if there is none
+	 */
+	private int find(long key) {
+		int low = 0;
+		int high = this.count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.key(middle) < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low < this.count && this.key(low) == key ? low : -1;
+	}
+
+	private long key(int index) {
+		return this.entries.getLong(HEADER_BYTES + index * ENTRY_BYTES);
+	}
+
+	private int move(int index) {
+		return this.entries.getShort(HEADER_BYTES + index * ENTRY_BYTES + 8);
+	}
+
+	private int weight(int index) {
+		return this.entries.getShort(HEADER_BYTES + index * ENTRY_BYTES + 10);
+	}
+
+	/**
+	 * Generates a book: every position reachable from the empty board by
+	 * playing next to the stones, up to a number of stones, is searched to a
+	 * fixed depth and its best move stored. The first stone is placed in the
+	 * center of the board, where the players open
+	 * 
+	 * @param args
+	 *            Book file, number of plies covered, search depth and number
+	 *            of rows and columns of the board
+	 * @throws IOException
+	 *             if the book cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		File file = new File(args.length > 0 ? args[0] : FILE);
+		int plies = args.length > 1 ? Integer.parseInt(args[1]) : PLIES;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEPTH;
+		int size = args.length > 3 ? Integer.parseInt(args[3]) : GomokuBoard.ROWS;
+		Player150721453 player = new Player150721453();
+		player.setMaxDepth(depth);
+		// no time limit, every position is searched to the full depth
+		player.setTimeLimit(3600000);
+		// canonical hash of each position, and its moves by weight
+		TreeMap<Long, Map<Integer, Integer>> book = new TreeMap<Long, Map<Integer, Integer>>();
+		List<Color[][]> level = new ArrayList<Color[][]>();
+		level.add(new Color[size][size]);
+		for (int ply = 0; ply < plies; ply++) {
+			Map<Long, Color[][]> next = new HashMap<Long, Color[][]>();
+			Color color = ply % 2 == 0 ? Color.BLACK : Color.WHITE;
+			for (Color[][] board : level) {
+				if (ply > 0) {
+					Move move = player.chooseMove(board, color);
+					if (player.getPrincipalVariation().length > 0) {
+						addMove(book, board, move);
+					}
+				}
+				for (int[] child : children(board)) {
+					board[child[0]][child[1]] = color;
+					Color[][] copy = new Color[board.length][];
+					for (int row = 0; row < board.length; row++) {
+						copy[row] = board[row].clone();
+					}
+					next.put(new BitBoard(copy).canonicalHash(), copy);
+					board[child[0]][child[1]] = null;
+				}
+			}
+			System.out.println("ply " + ply + ": " + level.size() + " positions searched");
+			level = new ArrayList<Color[][]>(next.values());
+		}
+		write(book, size, file);
+		System.out.println(book.size() + " positions written to " + file);
+	}
+
+	/**
+	 * Lists the moves the book expands a position with: the positions next to
+	 * the stones, or the center of an empty board
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @return row and column of each move
+	 */
+	private static List<int[]> children(Color[][] board) {
+		List<int[]> children = new ArrayList<int[]>();
+		BitBoard bitBoard = new BitBoard(board);
+		for (int row = 0; row < bitBoard.rows; row++) {
+			for (int col = 0; col < bitBoard.cols; col++) {
+				boolean center = row >= 2 && col >= 2 && row < bitBoard.rows - 2 && col < bitBoard.cols - 2;
+				if (board[row][col] == null
+						&& (bitBoard.stones() == 0 ? center : bitBoard.hasAdjacentStones(row, col))) {
+					children.add(new int[] { row, col });
+				}
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * Adds the best move of a position to the book. When the canonical
+	 * orientation of the position is symmetric, the images of the move under
+	 * those symmetries are just as good and are added as well
+	 * 
+	 * @param book
+	 *            Book being generated
+	 * @param board
+	 *            Representation of the game board
+	 * @param move
+	 *            Best move of the position
+	 */
+	private static void addMove(TreeMap<Long, Map<Integer, Integer>> book, Color[][] board, Move move) {
+		BitBoard bitBoard = new BitBoard(board);
+		long key = bitBoard.canonicalHash();
+		Symmetry symmetries = bitBoard.symmetry();
+		Map<Integer, Integer> moves = new TreeMap<Integer, Integer>();
+		for (int symmetry = 0; symmetry < symmetries.count(); symmetry++) {
+			if (bitBoard.hash(symmetry) == key) {
+				moves.put(symmetries.image(symmetry, move.row * bitBoard.cols + move.col), 1);
+			}
+		}
+		book.put(key, moves);
+	}
+
+	/**
+	 * Writes a book file
+	 * 
+	 * @param book
+	 *            Moves and weights of each position, by canonical hash
+	 * @param size
+	 *            Number of rows and columns of the board
+	 * @param file
+	 *            Book file
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	private static void write(TreeMap<Long, Map<Integer, Integer>> book, int size, File file) throws IOException {
+		int count = 0;
+		for (Map<Integer, Integer> moves : book.values()) {
+			count += moves.size();
+		}
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(size);
+			output.writeInt(size);
+			output.writeInt(count);
+			for (Map.Entry<Long, Map<Integer, Integer>> position : book.entrySet()) {
+				for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+					output.writeLong(position.getKey());
+					output.writeShort(move.getKey());
+					output.writeShort(move.getValue());
+				}
+			}
+		} finally {
+			output.close();
+		}
+	}
+}
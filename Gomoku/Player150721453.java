@@ -1,195 +1,26 @@
-import java.awt.Color;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
-
 /**
  * This gomoku player is an implementation of the Minimax algorithm with
  * alpha-beta pruning
  * 
  * @author Leticia Wanderley
  */
-public class Player150721453 extends GomokuPlayer {
-
-	private final int DEPTH = 5;
-	private Map<Double, Move> successors;
-
-	@Override
-	public Move chooseMove(Color[][] board, Color me) {
-		this.successors = new HashMap<Double, Move>();
-		Double max = this.maxValue(board, me, DEPTH, -Double.MAX_VALUE, Double.MAX_VALUE);
-		return this.successors.get(max);
-	}
-
-	/**
-	 * Evaluates the state of the board (game) and returns the evaluation value
-	 * 
-	 * @param board
-	 *            Representation of the state of the game
-	 * @param me
-	 *            Color which the player is playing
-	 * @return evaluation value
-	 */
-	private Double evaluationFuction(Color[][] board, Color me) {
-		Double value = 0.0;
-		for (int i = 0; i < GomokuBoard.ROWS; i++) {
-			for (int j = 0; j < GomokuBoard.COLS; j++) {
-				if (board[i][j] != null) {
-					// horizontal + vertical + diagonal descending right +
-					// diagonal descending left
-					value += threatSearch(i, j, 0, 1, board, me) + threatSearch(i, j, 1, 0, board, me)
-							+ threatSearch(i, j, 1, 1, board, me) + threatSearch(i, j, 1, -1, board, me);
-				}
-			}
-		}
-		return value;
-	}
+public class Player150721453 extends AlphaBetaPlayer {
 
-	/**
-	 * Part of the Minimax algorithm Calculates maximum value to be achieved from
-	 * the state of the board
-	 * 
-	 * @param board
-	 *            Representation of the state of the game
-	 * @param me
-	 *            Color which the player is playing
-	 * @param depth
-	 *            Depth of the search tree
-	 * @param alpha
-	 *            Lowest value range, used for pruning
-	 * @param beta
-	 *            Highest value range, used for pruning
-	 * @return maximum value achieved from the initial state
-	 */
-	public Double maxValue(Color[][] board, Color me, int depth, Double alpha, Double beta) {
-		Double val;
-		Double v = -Double.MAX_VALUE;
-		int bestRow, bestCol;
-		depth--;
-		if (depth == 0) {
-			return evaluationFuction(board, me);
-		}
-		for (int row = 0; row < GomokuBoard.ROWS; row++) {
-			for (int col = 0; col < GomokuBoard.COLS; col++) {
-				if (board[row][col] == null && this.hasAdjacentStones(board, row, col)) {
-					board[row][col] = me;
-					val = this.minValue(board, me, depth, alpha, beta);
-					this.successors.put(val, new Move(row, col));
-					if (val > v) {
-						v = val;
-						bestRow = row;
-						bestCol = col;
-					}
-					if (val >= beta) {
-						board[row][col] = null;
-						return val;
-					}
-					if (alpha < val) {
-						alpha = val;
-					}
-					board[row][col] = null;
-				}
-			}
-		}
-		if (v == -Double.MAX_VALUE) {
-			bestRow = this.randInt(2, 5);
-			bestCol = this.randInt(2, 5);
-			this.successors.put(v, new Move(bestRow, bestCol));
-		}
-		return v;
-	}
-
-	/**
-	 * Part of the Minimax algorithm Calculates minimum value to be achieved from
-	 * the state of the board
-	 * 
-	 * @param board
-	 *            Representation of the state of the game
-	 * @param me
-	 *            Color which the player is playing
-	 * @param depth
-	 *            Depth of the search tree
-	 * @param alpha
-	 *            Lowest value range, used for pruning
-	 * @param beta
-	 *            Highest value range, used for pruning
-	 * @return minimum value achieved from the initial state
-	 */
-	private Double minValue(Color[][] board, Color me, int depth, Double alpha, Double beta) {
-		Double val;
-		Double v = Double.MAX_VALUE;
-		depth--;
-		if (depth == 0) {
-			return evaluationFuction(board, me);
-		}
-		for (int row = 0; row < GomokuBoard.ROWS; row++) {
-			for (int col = 0; col < GomokuBoard.COLS; col++) {
-				if (board[row][col] == null && this.hasAdjacentStones(board, row, col)) {
-					board[row][col] = oppositeColor(me);
-					val = this.maxValue(board, me, depth, alpha, beta);
-					if (val < v) {
-						v = val;
-					}
-					if (val <= alpha) {
-						board[row][col] = null;
-						return val;
-					}
-					if (beta > val) {
-						beta = val;
-					}
-					board[row][col] = null;
-				}
-			}
-		}
-		return v;
+	public Player150721453() {
+		super();
 	}
 
 	/**
-	 * Check if the position has any stones placed around it
-	 * 
-	 * @param board
-	 *            Representation of the game board
-	 * @param row
-	 *            Position row
-	 * @param col
-	 *            Position column
-	 * @return true if the position has any  adjacent stones, false otherwise
+	 * @param tableMegabytes
+	 *            Memory budget of the transposition table
 	 */
-	private boolean hasAdjacentStones(Color[][] board, int row, int col) {
-		boolean result = false;
-		int upperRow = row - 1;
-		int belowRow = row + 1;
-		int leftCol = col - 1;
-		int rightCol = col + 1;
-		if (upperRow >= 0) {
-			if (leftCol >= 0) {
-				result = result || (board[upperRow][leftCol] != null);
-			}
-			if (rightCol < GomokuBoard.COLS) {
-				result = result || (board[upperRow][rightCol] != null);
-			}
-			result = result || (board[upperRow][col] != null);
-		}
-		if (belowRow < GomokuBoard.ROWS) {
-			if (leftCol >= 0) {
-				result = result || (board[belowRow][leftCol] != null);
-			}
-			if (rightCol < GomokuBoard.COLS) {
-				result = result || (board[belowRow][rightCol] != null);
-			}
-			result = result || (board[belowRow][col] != null);
-		}
-		if (leftCol >= 0) {
-			result = result || (board[row][leftCol] != null);
-		}
-		if (rightCol < GomokuBoard.COLS) {
-			result = result || (board[row][rightCol] != null);
-		}
-		return result;
+	public Player150721453(int tableMegabytes) {
+		super(tableMegabytes);
 	}
 
 	/**
-	 * Searches for possible threats in sets of 6 adjacent positions
+	 * Searches for possible threats in sets of win length + 1 adjacent
+	 * positions
 	 * 
 	 * @param currentRow
 	 *            Current row being searched
@@ -202,66 +33,70 @@ public class Player150721453 extends GomokuPlayer {
 	 * @param board
 	 *            Representation of the game board
 	 * @param me
-	 *            Color which the player is playing
-	 * @return value of threat found within 6 positions set
+	 *            Side which the player is playing
+	 * @return value of threat found within the positions set
 	 */
-	private Double threatSearch(int currentRow, int currentCol, int rowStep, int colStep, Color[][] board, Color me) {
+	@Override
+	protected double threatSearch(int currentRow, int currentCol, int rowStep, int colStep, BitBoard board, int me) {
 		int myCount = 0;
 		int oppositeCount = 0;
 		int nullCount = 0;
-		Double value = 0.0;
-		for (int k = 0; k < 6; k++) {
+		double value = 0.0;
+		int winLength = board.winLength;
+		int length = board.windows().length;
+		for (int k = 0; k < length; k++) {
 			int row = currentRow + k * rowStep;
 			int col = currentCol + k * colStep;
-			if (!(row < 0 || col < 0 || row >= board.length || col >= board[row].length)) {
-				if (me.equals(board[row][col])) {
+			if (!(row < 0 || col < 0 || row >= board.rows || col >= board.cols)) {
+				int stone = board.get(row, col);
+				if (stone == me) {
 					myCount++;
-				} else if (oppositeColor(me).equals(board[row][col])) {
+				} else if (stone == BitBoard.opposite(me)) {
 					oppositeCount++;
-				} else if (board[row][col] == null) {
+				} else if (stone == BitBoard.EMPTY) {
 					nullCount++;
 				}
 			} else {
 				break;
 			}
 		}
-		if (myCount == 5) {
+		if (myCount == winLength) {
 			value += Threat150721453.FIVE.getWeight();
-		} else if (myCount == 4) {
+		} else if (myCount == winLength - 1) {
 			if (nullCount == 0) {
 				value += Threat150721453.STRAIGHT_FOUR.getWeight();
 			} else if (nullCount == 1) {
 				value += Threat150721453.FOUR.getWeight();
 			}
-		} else if (myCount == 3) {
+		} else if (myCount == winLength - 2) {
 			if (nullCount == 3) {
 				value += Threat150721453.THE_THREE.getWeight();
 			}
 			if (nullCount == 2) {
 				value += Threat150721453.THREE.getWeight();
 			}
-		} else if (myCount == 2) {
+		} else if (myCount == winLength - 3) {
 			if (nullCount >= 3) {
 				value += Threat150721453.TWO.getWeight();
 			}
 		}
 
-		if (oppositeCount == 5) {
+		if (oppositeCount == winLength) {
 			value += -(2 * Threat150721453.FIVE.getWeight());
-		} else if (oppositeCount == 4) {
+		} else if (oppositeCount == winLength - 1) {
 			if (nullCount == 0) {
 				value += -(10 * Threat150721453.STRAIGHT_FOUR.getWeight());
 			} else if (nullCount == 1) {
 				value += -(10 * Threat150721453.FOUR.getWeight());
 			}
-		} else if (myCount == 3) {
+		} else if (oppositeCount == winLength - 2) {
 			if (nullCount == 3) {
 				value += -(3 * Threat150721453.THE_THREE.getWeight());
 			}
 			if (nullCount == 2) {
 				value += -(3 * Threat150721453.THREE.getWeight());
 			}
-		} else if (myCount == 2) {
+		} else if (oppositeCount == winLength - 3) {
 			if (nullCount >= 3) {
 				value += -(3 * Threat150721453.TWO.getWeight());
 			}
@@ -269,36 +104,6 @@ public class Player150721453 extends GomokuPlayer {
 		return value;
 	}
 
-	/**
-	 * Returns the opposite color from the one sent as parameter
-	 * 
-	 * @param opposite
-	 *            Player's color
-	 * @return black if the player's color is white, white if the player's color
-	 *         is black
-	 */
-	private Color oppositeColor(Color opposite) {
-		if (opposite.equals(Color.BLACK)) {
-			return Color.WHITE;
-		}
-		return Color.BLACK;
-	}
-
-	/**
-	 * Randomizes an integer inside the range in the parameters
-	 * 
-	 * @param min
-	 *            minimum range value
-	 * @param max
-	 *            maximum range value
-	 * @return random number between minimum and max
-	 */
-	public int randInt(int min, int max) {
-		Random random = new Random();
-		int randomNum = random.nextInt((max - min) + 1) + min;
-		return randomNum;
-	}
-
 	/**
 	 * Enum representing the weights values of threats found on the board
 	 * 
@@ -0,0 +1,307 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transposition table kept in a file mapped in memory, so the results of
+ * deep searches survive the game, and the process, that found them. It is
+ * laid out like TranspositionTable, two slots per bucket, the first one
+ * keeping the deepest search seen for that bucket and the second one always
+ * replaced, and is just as lock free: the stored key is XORed with the rest
+ * of the entry, so an entry torn by concurrent writes, from another thread
+ * or another process mapping the same file, does not match its key and is
+ * treated as a miss. The players only keep searches of a few plies or more
+ * here, the shallow ones are cheaper to repeat than to read from the file.
+ * The header of the file holds the version of its format, a signature of
+ * the Zobrist keys and of the evaluation of the players, and the board size
+ * and win length it was created for. A file whose header does not match is
+ * replaced when it is opened by an empty one renamed over it, never truncated,
+ * since another process, such as a server of the previous version, may still
+ * have it mapped. That process goes on with the file it mapped, and as the
+ * signature of the keys and evaluation is also XORed into the key of every
+ * entry, results written under other keys or by another evaluation never
+ * match, whichever file they end up in
+ * 
+ * @author Leticia Wanderley
+ */
+public class PositionCache {
+
+	private static final int MAGIC = 0x474B5431; // "GKT1"
+	/** Version of the layout of the file, raised whenever it changes */
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 32;
+	/** Entry size in bytes: key + score + packed depth, bound and move + padding */
+	private static final int ENTRY_BYTES = 8 + 8 + 8;
+
+	private static final Map<String, PositionCache> SHARED = new HashMap<String, PositionCache>();
+
+	private final MappedByteBuffer entries;
+	private final int mask;
+
+	private final int rows;
+	private final int cols;
+	private final int winLength;
+
+	/**
+	 * @param entries
+	 *            Contents of a cache file, with a header that matches the
+	 *            searches
+	 * @throws IOException
+	 *             if the contents are not a cache
+	 */
+	private PositionCache(MappedByteBuffer entries) throws IOException {
+		int buckets = entries.getInt(8);
+		if (buckets <= 0 || Integer.bitCount(buckets) != 1
+				|| entries.capacity() < HEADER_BYTES + (long) buckets * 2 * ENTRY_BYTES) {
+			throw new IOException("Truncated position cache");
+		}
+		this.entries = entries;
+		this.mask = buckets - 1;
+		this.rows = entries.getInt(12);
+		this.cols = entries.getInt(16);
+		this.winLength = entries.getInt(20);
+	}
+
+	/**
+	 * Maps a cache file in memory, creating it if it does not exist, and
+	 * replacing it if it was written with another format, other keys or
+	 * evaluation, or for another board size or win length. Every player of the
+	 * process that opens the same file gets the same cache
+	 * 
+	 * @param file
+	 *            Cache file
+	 * @param megabytes
+	 *            Size of the file when it is created, an existing file keeps
+	 *            its size
+	 * @param rows
+	 *            Number of rows of the boards searched
+	 * @param cols
+	 *            Number of columns of the boards searched
+	 * @param winLength
+	 *            Number of stones in a row needed to win
+	 * @return the cache
+	 * @throws IOException
+	 *             if the file cannot be mapped, or if the process already
+	 *             opened it for another board size or win length
+	 */
+	public static synchronized PositionCache open(File file, int megabytes, int rows, int cols, int winLength)
+			throws IOException {
+		String path = file.getCanonicalPath();
+		PositionCache cache = SHARED.get(path);
+		if (cache == null) {
+			if (matches(file, rows, cols, winLength)) {
+				RandomAccessFile input = new RandomAccessFile(file, "rw");
+				try {
+					// the mapping stays valid after the file is closed
+					cache = new PositionCache(input.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+							input.length()));
+				} finally {
+					input.close();
+				}
+			} else {
+				if (file.length() > 0) {
+					System.err.println("Position cache " + file + " was written for other searches, replaced");
+				}
+				cache = create(file, megabytes, rows, cols, winLength);
+			}
+			SHARED.put(path, cache);
+		} else if (cache.rows != rows || cache.cols != cols || cache.winLength != winLength) {
+			throw new IOException("Position cache " + file + " is open for " + cache.rows + "x" + cache.cols
+					+ " boards with lines of " + cache.winLength);
+		}
+		return cache;
+	}
+
+	/**
+	 * Writes an empty cache to a new file in the directory of the cache file
+	 * and renames it over the cache file. The old file is never truncated:
+	 * another process may still have it mapped, and would fault on the pages
+	 * cut from under it, so it keeps the old contents until it unmaps them
+	 * 
+	 * @param file
+	 *            Cache file, replaced
+	 * @param megabytes
+	 *            Size of the new file
+	 * @param rows
+	 *            Number of rows of the boards searched
+	 * @param cols
+	 *            Number of columns of the boards searched
+	 * @param winLength
+	 *            Number of stones in a row needed to win
+	 * @return the new cache, mapped before the rename so it is the file this
+	 *         process wrote even if another one replaces it at the same time
+	 * @throws IOException
+	 *             if the file cannot be written, mapped or renamed
+	 */
+	private static PositionCache create(File file, int megabytes, int rows, int cols, int winLength)
+			throws IOException {
+		long entries = Math.max(2, ((long) megabytes << 20) / ENTRY_BYTES);
+		// a mapping holds at most 2 GB
+		int buckets = Integer.highestOneBit(
+				(int) Math.min(entries / 2, (Integer.MAX_VALUE - HEADER_BYTES) / (2 * ENTRY_BYTES)));
+		File temporary = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		boolean renamed = false;
+		try {
+			PositionCache cache;
+			RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+			try {
+				output.setLength(HEADER_BYTES + (long) buckets * 2 * ENTRY_BYTES);
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(buckets);
+				output.writeInt(rows);
+				output.writeInt(cols);
+				output.writeInt(winLength);
+				output.writeLong(searchSignature());
+				cache = new PositionCache(output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+						output.length()));
+			} finally {
+				output.close();
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			renamed = true;
+			return cache;
+		} finally {
+			if (!renamed) {
+				temporary.delete();
+			}
+		}
+	}
+
+	/**
+	 * Reads the header of a cache file
+	 * 
+	 * @param file
+	 *            Cache file, possibly missing or empty
+	 * @param rows
+	 *            Number of rows of the boards searched
+	 * @param cols
+	 *            Number of columns of the boards searched
+	 * @param winLength
+	 *            Number of stones in a row needed to win
+	 * @return true if the file is a cache of this format, keys and evaluation
+	 *         for the board size and win length
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private static boolean matches(File file, int rows, int cols, int winLength) throws IOException {
+		if (file.length() < HEADER_BYTES) {
+			return false;
+		}
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			return input.readInt() == MAGIC && input.readInt() == VERSION && input.readInt() > 0
+					&& input.readInt() == rows && input.readInt() == cols && input.readInt() == winLength
+					&& input.readLong() == searchSignature();
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @return signature of what the stored results depend on besides the
+	 *         board: the Zobrist keys the positions are hashed with and the
+	 *         version of the evaluation of the players. It is in the header,
+	 *         and the players XOR it into the key of every entry too, so the
+	 *         entries another process writes under other keys or another
+	 *         evaluation, into a file it mapped before this one was created,
+	 *         never match
+	 */
+	public static long searchSignature() {
+		return Zobrist.signature() ^ signature("evaluation " + AlphaBetaPlayer.EVALUATION_VERSION);
+	}
+
+	/**
+	 * Hashes the description of what the stored scores depend on, such as the
+	 * player and the rules, into a key that is XORed with the position hashes,
+	 * so different players can share a file without reading each other's
+	 * scores
+	 * 
+	 * @param description
+	 *            Description of the searches stored
+	 * @return key of the searches
+	 */
+	public static long signature(String description) {
+		// FNV-1a, then the finalizer of MurmurHash3 to spread the bits
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < description.length(); i++) {
+			hash = (hash ^ description.charAt(i)) * 0x100000001B3L;
+		}
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	/**
+	 * Looks for a position in the cache
+	 * 
+	 * @param key
+	 *            Hash of the position
+	 * @param entry
+	 *            Filled with the stored result if the position is found
+	 * @return true if the position is stored, false otherwise
+	 */
+	public boolean probe(long key, TranspositionTable.Entry entry) {
+		int slot = ((int) key & this.mask) << 1;
+		for (int i = slot; i < slot + 2; i++) {
+			int offset = HEADER_BYTES + i * ENTRY_BYTES;
+			int info = this.entries.getInt(offset + 16);
+			long score = this.entries.getLong(offset + 8);
+			if (info != 0 && (this.entries.getLong(offset) ^ score ^ info) == key) {
+				entry.depth = info & 0x1F;
+				entry.bound = (info >>> 5) & 0x3;
+				int move = (info >>> 7) & 0xFFFF;
+				entry.move = move == 0xFFFF ? -1 : move;
+				entry.score = Double.longBitsToDouble(score);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stores the result of a search
+	 * 
+	 * @param key
+	 *            Hash of the position
+	 * @param depth
+	 *            Depth of the search
+	 * @param bound
+	 *            TranspositionTable.EXACT, LOWER or UPPER
+	 * @param score
+	 *            Score found by the search
+	 * @param move
+	 *            Best move found, as row * cols + col, or -1 if none
+	 */
+	public void store(long key, int depth, int bound, double score, int move) {
+		int slot = ((int) key & this.mask) << 1;
+		int offset = HEADER_BYTES + slot * ENTRY_BYTES;
+		int stored = this.entries.getInt(offset + 16);
+		if (stored != 0
+				&& (this.entries.getLong(offset) ^ this.entries.getLong(offset + 8) ^ stored) != key
+				&& depth < (stored & 0x1F)) {
+			offset += ENTRY_BYTES; // keep the deeper entry, use the always replace slot
+		}
+		int info = 1 << 31 | (move & 0xFFFF) << 7 | bound << 5 | depth;
+		long bits = Double.doubleToRawLongBits(score);
+		this.entries.putInt(offset + 16, info);
+		this.entries.putLong(offset + 8, bits);
+		this.entries.putLong(offset, key ^ bits ^ info);
+	}
+
+	/**
+	 * Writes the cache to the disk. The operating system writes the mapped
+	 * pages on its own, even if the process is killed, this is only needed
+	 * to survive a crash of the machine
+	 */
+	public void flush() {
+		this.entries.force();
+	}
+}
@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.util.Random;
 
 /** The random gomoku player chooses random squares on the board (using a
  *  uniform distribution) until an unoccupied square is found, which is then
@@ -8,10 +9,17 @@ import java.awt.Color;
  **/
 class RandomPlayer extends GomokuPlayer {
 
+	private Random random = new Random();
+
+	/** Seeds the choice of squares, so that games can be replayed */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	} // setSeed()
+
 	public Move chooseMove(Color[][] board, Color me) {
 		while (true) {
-			int row = (int) (Math.random() * 8);	// values are from 0 to 7
-			int col = (int) (Math.random() * 8);
+			int row = random.nextInt(board.length);	// values are from 0 to ROWS-1
+			int col = random.nextInt(board[row].length);
 			if (board[row][col] == null)			// is the square vacant?
 				return new Move(row, col);
 		}
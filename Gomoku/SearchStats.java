@@ -0,0 +1,307 @@
+/**
+ * Statistics of the search of one move: nodes, leaves, cutoffs per ply,
+ * transposition table hits and the value, nodes and time of each iteration
+ * of the iterative deepening. The counters are plain fields incremented by the
+ * search thread that owns them, so they can stay on while playing
+ * 
+ * @author Leticia Wanderley
+ */
+public class SearchStats {
+
+	long nodes;
+	long leaves;
+	long probes;
+	long hits;
+	// cutoffs of each ply, and how many of them were caused by the first move
+	private final long[] cutoffs;
+	private final long[] firstMoveCutoffs;
+	private final int[] depths;
+	private final double[] values;
+	private final long[] iterationNodes;
+	private final long[] iterationNanos;
+	private int iterations;
+	private boolean threatWin;
+	private boolean bookMove;
+	private boolean ponderHit;
+
+	/**
+	 * @param maxPly
+	 *            Maximum depth of the search
+	 */
+	public SearchStats(int maxPly) {
+		this.cutoffs = new long[maxPly];
+		this.firstMoveCutoffs = new long[maxPly];
+		this.depths = new int[maxPly];
+		this.values = new double[maxPly];
+		this.iterationNodes = new long[maxPly];
+		this.iterationNanos = new long[maxPly];
+	}
+
+	/**
+	 * Resets every counter for the search of a new move
+	 */
+	public void clear() {
+		this.nodes = 0;
+		this.leaves = 0;
+		this.probes = 0;
+		this.hits = 0;
+		for (int ply = 0; ply < this.cutoffs.length; ply++) {
+			this.cutoffs[ply] = 0;
+			this.firstMoveCutoffs[ply] = 0;
+		}
+		this.iterations = 0;
+		this.threatWin = false;
+		this.bookMove = false;
+		this.ponderHit = false;
+	}
+
+	/**
+	 * Records a beta cutoff
+	 * 
+	 * @param ply
+	 *            Distance of the node from the root
+	 * @param moveIndex
+	 *            Position of the move that caused the cutoff in the ordering
+	 */
+	void cutoff(int ply, int moveIndex) {
+		this.cutoffs[ply]++;
+		if (moveIndex == 0) {
+			this.firstMoveCutoffs[ply]++;
+		}
+	}
+
+	/**
+	 * Records a completed iteration of the iterative deepening
+	 * 
+	 * @param depth
+	 *            Depth of the iteration
+	 * @param value
+	 *            Value the iteration found for the root
+	 * @param nodes
+	 *            Nodes visited by the iteration
+	 * @param nanos
+	 *            Time taken by the iteration, in nanoseconds
+	 */
+	void iteration(int depth, double value, long nodes, long nanos) {
+		this.depths[this.iterations] = depth;
+		this.values[this.iterations] = value;
+		this.iterationNodes[this.iterations] = nodes;
+		this.iterationNanos[this.iterations] = nanos;
+		this.iterations++;
+	}
+
+	/**
+	 * Records that the move was found by the threat space search, without
+	 * running the minimax search
+	 */
+	void threatWin() {
+		this.threatWin = true;
+	}
+
+	/**
+	 * Records that the move was taken from the opening book, without any
+	 * search
+	 */
+	void bookMove() {
+		this.bookMove = true;
+	}
+
+	/**
+	 * Records that the opponent played the reply the player pondered on
+	 */
+	void ponderHit() {
+		this.ponderHit = true;
+	}
+
+	/**
+	 * Adds the counters of another search of the same move, such as a worker
+	 * of the parallel search. Iterations are not added, they are recorded by
+	 * the player that runs the iterative deepening
+	 * 
+	 * @param other
+	 *            Statistics to be added
+	 */
+	void add(SearchStats other) {
+		this.nodes += other.nodes;
+		this.leaves += other.leaves;
+		this.probes += other.probes;
+		this.hits += other.hits;
+		for (int ply = 0; ply < this.cutoffs.length; ply++) {
+			this.cutoffs[ply] += other.cutoffs[ply];
+			this.firstMoveCutoffs[ply] += other.firstMoveCutoffs[ply];
+		}
+	}
+
+	/**
+	 * Copies the statistics
+	 * 
+	 * @return copy of the statistics
+	 */
+	SearchStats copy() {
+		SearchStats copy = new SearchStats(this.cutoffs.length);
+		copy.add(this);
+		System.arraycopy(this.depths, 0, copy.depths, 0, this.iterations);
+		System.arraycopy(this.values, 0, copy.values, 0, this.iterations);
+		System.arraycopy(this.iterationNodes, 0, copy.iterationNodes, 0, this.iterations);
+		System.arraycopy(this.iterationNanos, 0, copy.iterationNanos, 0, this.iterations);
+		copy.iterations = this.iterations;
+		copy.threatWin = this.threatWin;
+		copy.bookMove = this.bookMove;
+		copy.ponderHit = this.ponderHit;
+		return copy;
+	}
+
+	/**
+	 * @return number of nodes visited
+	 */
+	public long getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * @return number of nodes evaluated as leaves
+	 */
+	public long getLeaves() {
+		return this.leaves;
+	}
+
+	/**
+	 * @param ply
+	 *            Distance from the root
+	 * @return number of beta cutoffs on the ply
+	 */
+	public long getCutoffs(int ply) {
+		return this.cutoffs[ply];
+	}
+
+	/**
+	 * @return fraction of the cutoffs caused by the first move searched, a
+	 *         measure of how good the move ordering is
+	 */
+	public double getFirstMoveCutoffRate() {
+		long cutoffs = 0;
+		long first = 0;
+		for (int ply = 0; ply < this.cutoffs.length; ply++) {
+			cutoffs += this.cutoffs[ply];
+			first += this.firstMoveCutoffs[ply];
+		}
+		return cutoffs == 0 ? 0 : (double) first / cutoffs;
+	}
+
+	/**
+	 * @return nodes of the last iteration divided by the nodes of the one
+	 *         before it, 0 if there were less than two iterations
+	 */
+	public double getBranchingFactor() {
+		if (this.iterations < 2 || this.iterationNodes[this.iterations - 2] == 0) {
+			return 0;
+		}
+		return (double) this.iterationNodes[this.iterations - 1] / this.iterationNodes[this.iterations - 2];
+	}
+
+	/**
+	 * @return fraction of the transposition table probes that found the
+	 *         position
+	 */
+	public double getTableHitRate() {
+		return this.probes == 0 ? 0 : (double) this.hits / this.probes;
+	}
+
+	/**
+	 * @return number of completed iterations
+	 */
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	/**
+	 * @param iteration
+	 *            Index of the iteration
+	 * @return depth searched by the iteration
+	 */
+	public int getIterationDepth(int iteration) {
+		return this.depths[iteration];
+	}
+
+	/**
+	 * @param iteration
+	 *            Index of the iteration
+	 * @return value found for the root by the iteration
+	 */
+	public double getIterationValue(int iteration) {
+		return this.values[iteration];
+	}
+
+	/**
+	 * @param iteration
+	 *            Index of the iteration
+	 * @return nodes visited by the iteration
+	 */
+	public long getIterationNodes(int iteration) {
+		return this.iterationNodes[iteration];
+	}
+
+	/**
+	 * @param iteration
+	 *            Index of the iteration
+	 * @return time taken by the iteration, in nanoseconds
+	 */
+	public long getIterationNanos(int iteration) {
+		return this.iterationNanos[iteration];
+	}
+
+	/**
+	 * @return true if the move was a forced win found by the threat space
+	 *         search
+	 */
+	public boolean isThreatWin() {
+		return this.threatWin;
+	}
+
+	/**
+	 * @return true if the move was taken from the opening book
+	 */
+	public boolean isBookMove() {
+		return this.bookMove;
+	}
+
+	/**
+	 * @return true if the opponent played the reply the player pondered on
+	 */
+	public boolean isPonderHit() {
+		return this.ponderHit;
+	}
+
+	/**
+	 * @return the statistics in a single line, for logs
+	 */
+	@Override
+	public String toString() {
+		if (this.threatWin) {
+			return "forced win found by the threat space search";
+		} else if (this.bookMove) {
+			return "move taken from the opening book";
+		} else if (this.ponderHit && this.iterations == 0) {
+			return "move found while pondering";
+		}
+		StringBuilder line = new StringBuilder(String.format(
+				"nodes %d leaves %d ebf %.2f first cutoff %.1f%% table hits %.1f%% cutoffs",
+				this.nodes, this.leaves, this.getBranchingFactor(),
+				100 * this.getFirstMoveCutoffRate(), 100 * this.getTableHitRate()));
+		int plies = this.cutoffs.length;
+		while (plies > 1 && this.cutoffs[plies - 1] == 0) {
+			plies--;
+		}
+		for (int ply = 0; ply < plies; ply++) {
+			line.append(ply == 0 ? " " : "/").append(this.cutoffs[ply]);
+		}
+		if (this.ponderHit) {
+			line.append(" ponder hit");
+		}
+		line.append(" iterations");
+		for (int i = 0; i < this.iterations; i++) {
+			line.append(String.format(" %d:%.1fms", this.depths[i], this.iterationNanos[i] / 1e6));
+		}
+		return line.toString();
+	}
+}
@@ -7,8 +7,8 @@ import java.awt.Color;
 class SequencePlayer extends GomokuPlayer {
 
 	public Move chooseMove(Color[][] board, Color me) {
-		for (int row = 0; row < GomokuBoard.ROWS; row++)
-			for (int col = 0; col < GomokuBoard.COLS; col++)
+		for (int row = 0; row < board.length; row++)
+			for (int col = 0; col < board[row].length; col++)
 				if (board[row][col] == null)
 					return new Move(row, col);
 		return null;
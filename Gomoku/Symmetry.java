@@ -0,0 +1,175 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rotations and reflections of a board: the 8 symmetries of a square board,
+ * or the 4 that do not swap rows and columns of any other board. A position
+ * and its images are the same gomoku position, so caches keyed by the
+ * canonical hash, the lowest hash among the images, hold one entry for all
+ * of them. A table of the images of every position, and of their Zobrist
+ * keys, is built once for each board size, so boards can keep the hash of
+ * every image up to date with one XOR per symmetry
+ * 
+ * @author Leticia Wanderley
+ */
+public class Symmetry {
+
+	/** Largest number of symmetries of a board */
+	public static final int MAX_SYMMETRIES = 8;
+
+	private static final ConcurrentMap<Long, Symmetry> TABLES = new ConcurrentHashMap<Long, Symmetry>();
+
+	public final int rows;
+	public final int cols;
+
+	private final int count;
+	// image and preimage of each position under each symmetry, indexed by
+	// symmetry, then by position
+	private final int[][] images;
+	private final int[][] preimages;
+	// Zobrist key of the image of each stone, indexed by symmetry, side and
+	// position
+	private final long[][][] keys;
+
+	/**
+	 * @param rows
+	 *            Number of rows of the board
+	 * @param cols
+	 *            Number of columns of the board
+	 */
+	private Symmetry(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		this.count = rows == cols ? 8 : 4;
+		this.images = new int[this.count][rows * cols];
+		this.preimages = new int[this.count][rows * cols];
+		this.keys = new long[this.count][3][rows * cols];
+		for (int symmetry = 0; symmetry < this.count; symmetry++) {
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					int[] image = transform(symmetry, row, col, rows, cols);
+					int position = row * cols + col;
+					this.images[symmetry][position] = image[0] * cols + image[1];
+					this.preimages[symmetry][image[0] * cols + image[1]] = position;
+					this.keys[symmetry][BitBoard.BLACK][position] = Zobrist.key(image[0], image[1], BitBoard.BLACK);
+					this.keys[symmetry][BitBoard.WHITE][position] = Zobrist.key(image[0], image[1], BitBoard.WHITE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the symmetries of a board size, building their tables the first
+	 * time the size is used
+	 * 
+	 * @param rows
+	 *            Number of rows of the board
+	 * @param cols
+	 *            Number of columns of the board
+	 * @return symmetries of the board
+	 */
+	public static Symmetry of(int rows, int cols) {
+		Long key = Long.valueOf((long) rows << 32 | cols);
+		Symmetry symmetry = TABLES.get(key);
+		if (symmetry == null) {
+			symmetry = new Symmetry(rows, cols);
+			Symmetry previous = TABLES.putIfAbsent(key, symmetry);
+			if (previous != null) {
+				symmetry = previous;
+			}
+		}
+		return symmetry;
+	}
+
+	/**
+	 * @return number of symmetries of the board, the identity being 0
+	 */
+	public int count() {
+		return this.count;
+	}
+
+	/**
+	 * @param symmetry
+	 *            Symmetry, from 0 to count() - 1
+	 * @param position
+	 *            Position, as row * cols + col
+	 * @return transformed position
+	 */
+	public int image(int symmetry, int position) {
+		return this.images[symmetry][position];
+	}
+
+	/**
+	 * @param symmetry
+	 *            Symmetry, from 0 to count() - 1
+	 * @param position
+	 *            Transformed position, as row * cols + col
+	 * @return position that the symmetry transforms into it
+	 */
+	public int preimage(int symmetry, int position) {
+		return this.preimages[symmetry][position];
+	}
+
+	/**
+	 * @param symmetry
+	 *            Symmetry, from 0 to count() - 1
+	 * @param position
+	 *            Position of a stone, as row * cols + col
+	 * @param side
+	 *            BitBoard.BLACK or BitBoard.WHITE
+	 * @return Zobrist key of the stone on the transformed position
+	 */
+	public long key(int symmetry, int position, int side) {
+		return this.keys[symmetry][side][position];
+	}
+
+	/**
+	 * Finds the symmetry whose image of a position has the lowest hash
+	 * 
+	 * @param hashes
+	 *            Hash of the image of the position under each symmetry
+	 * @param count
+	 *            Number of symmetries
+	 * @return the first symmetry that gives the lowest hash
+	 */
+	public static int canonical(long[] hashes, int count) {
+		int best = 0;
+		for (int symmetry = 1; symmetry < count; symmetry++) {
+			if (hashes[symmetry] < hashes[best]) {
+				best = symmetry;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Transforms a position of the board. Bit 2 of the symmetry swaps rows and
+	 * columns, then bit 0 mirrors the rows and bit 1 mirrors the columns
+	 * 
+	 * @param symmetry
+	 *            Symmetry, from 0 to 7
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @param rows
+	 *            Number of rows of the board
+	 * @param cols
+	 *            Number of columns of the board
+	 * @return row and column of the transformed position
+	 */
+	static int[] transform(int symmetry, int row, int col, int rows, int cols) {
+		if ((symmetry & 4) != 0) {
+			int swap = row;
+			row = col;
+			col = swap;
+		}
+		if ((symmetry & 1) != 0) {
+			row = rows - 1 - row;
+		}
+		if ((symmetry & 2) != 0) {
+			col = cols - 1 - col;
+		}
+		return new int[] { row, col };
+	}
+}
@@ -1,7 +1,6 @@
-import java.awt.Color;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * This gomoku player is an implementation of the Minimax algorithm with
@@ -9,268 +8,297 @@ import java.util.Random;
  * 
  * @author Leticia Wanderley
  */
-public class ThreatModification extends GomokuPlayer {
+public class ThreatModification extends AlphaBetaPlayer {
 
-	private final int DEPTH = 5;
-	private Map<Double, Move> successors;
+	/** Shortest and longest lines to win the threat tables can be built for */
+	static final int MIN_WIN_LENGTH = 3;
+	static final int MAX_WIN_LENGTH = 9;
 
-	@Override
-	public Move chooseMove(Color[][] board, Color me) {
-		this.successors = new HashMap<Double, Move>();
-		Double max = this.maxValue(board, me, DEPTH, -Double.MAX_VALUE, Double.MAX_VALUE);
-		return this.successors.get(max);
+	/**
+	 * Patterns of the threats of a player when five in a row wins, M for the
+	 * player's stones and _ for empty positions. Straight fours and open
+	 * threes must match the whole window, the others any part of it
+	 */
+	private static final String[] STRAIGHT_FOURS = { "_MMMM_" };
+	private static final String[] FOURS = { "_MMMM", "MMMM_", "M_MMM", "MM_MM", "MMM_M" };
+	private static final String[] OPEN_THREES = { "__MMM_", "___MMM", "MMM___", "_MMM__" };
+	private static final String[] THREES = { "MMM__", "_MMM_", "M_MM_", "_M_MM", "M_M_M", "MM_M_", "_MM_M", "__MMM" };
+	private static final String[] TWOS = { "___MM", "___MM", "_MM__", "__MM_", "M_M__", "M__M_", "M___M", "_M__M",
+			"__M_M" };
+
+	/** Threat tables of each win length, built when it is first evaluated */
+	private static final Tables[] TABLES = new Tables[MAX_WIN_LENGTH + 1];
+
+	/**
+	 * Threat values of every window of a win length, indexed by the side of
+	 * the player, the window length and the window positions encoded as a
+	 * base 3 number (one BitBoard.EMPTY, BLACK or WHITE digit per position,
+	 * first position most significant)
+	 */
+	private static final class Tables {
+		final double[][][] threats;
+		/** Threat of the player found in each window, null if none */
+		final Threat[][][] threatTypes;
+
+		Tables(int winLength) {
+			this.threats = new double[3][winLength + 2][];
+			this.threatTypes = new Threat[3][winLength + 2][];
+			Patterns mine = new Patterns(winLength, 'M');
+			Patterns theirs = new Patterns(winLength, 'O');
+			for (int me = BitBoard.BLACK; me <= BitBoard.WHITE; me++) {
+				for (int length = 0; length <= winLength + 1; length++) {
+					int windows = (int) Math.pow(3, length);
+					this.threats[me][length] = new double[windows];
+					this.threatTypes[me][length] = new Threat[windows];
+					for (int code = 0; code < windows; code++) {
+						this.threats[me][length][code] = patternValue(decode(code, length, me), winLength, mine,
+								theirs);
+						for (Threat threat : Threat.values()) {
+							if (threat.getWeight() == this.threats[me][length][code]) {
+								this.threatTypes[me][length][code] = threat;
+							}
+						}
+					}
+				}
+			}
+		}
 	}
 
 	/**
-	 * Evaluates the state of the board (game) and returns the evaluation value
-	 * 
-	 * @param board
-	 *            Representation of the state of the game
-	 * @param me
-	 *            Color which the player is playing
-	 * @return evaluation value
+	 * Patterns of the threats of one player for a win length
 	 */
-	private Double evaluationFuction(Color[][] board, Color me) {
-		Double value = 0.0;
-		for (int i = 0; i < GomokuBoard.ROWS; i++) {
-			for (int j = 0; j < GomokuBoard.COLS; j++) {
-				if (board[i][j] != null) {
-					// horizontal + vertical + diagonal descending right +
-					// diagonal descending left
-					value += threatSearch(i, j, 0, 1, board, me) + threatSearch(i, j, 1, 0, board, me)
-							+ threatSearch(i, j, 1, 1, board, me) + threatSearch(i, j, 1, -1, board, me);
+	private static final class Patterns {
+		final String five;
+		final String[] straightFours;
+		final String[] fours;
+		final String[] openThrees;
+		final String[] threes;
+		final String[] twos;
+
+		/**
+		 * @param winLength
+		 *            Number of stones in a row needed to win
+		 * @param stone
+		 *            Character of the player's stones, M or O
+		 */
+		Patterns(int winLength, char stone) {
+			this.five = repeat('M', winLength).replace('M', stone);
+			if (winLength == BitBoard.WIN_LENGTH) {
+				this.straightFours = replace(STRAIGHT_FOURS, stone);
+				this.fours = replace(FOURS, stone);
+				this.openThrees = replace(OPEN_THREES, stone);
+				this.threes = replace(THREES, stone);
+				this.twos = replace(TWOS, stone);
+			} else {
+				// other lengths take every arrangement of the stones one, two
+				// and three short of winning, and the straight four and open
+				// three of the window
+				this.straightFours = replace(new String[] { "_" + repeat('M', winLength - 1) + "_" }, stone);
+				this.fours = replace(arrangements(winLength, winLength - 1), stone);
+				String[] openThrees = new String[4];
+				for (int before = 0; before < 4; before++) {
+					openThrees[before] = repeat('_', before) + repeat('M', winLength - 2) + repeat('_', 3 - before);
 				}
+				this.openThrees = replace(openThrees, stone);
+				this.threes = replace(arrangements(winLength, winLength - 2), stone);
+				this.twos = replace(arrangements(winLength, winLength - 3), stone);
 			}
 		}
-		return value;
+	}
+
+	public ThreatModification() {
+		super();
+	}
+
+	/**
+	 * @param tableMegabytes
+	 *            Memory budget of the transposition table
+	 */
+	public ThreatModification(int tableMegabytes) {
+		super(tableMegabytes);
 	}
 
 	/**
-	 * Part of the Minimax algorithm Calculates maximum value to be achieved from
-	 * the state of the board
+	 * Searches for possible threats in sets of win length + 1 adjacent
+	 * positions. The window is encoded as a base 3 number and its value read
+	 * from the table built by patternValue for the win length of the board
 	 * 
+	 * @param currentRow
+	 *            Current row being searched
+	 * @param currentCol
+	 *            Current column being searched
+	 * @param rowStep
+	 *            Row search step
+	 * @param colStep
+	 *            Column search step
 	 * @param board
-	 *            Representation of the state of the game
+	 *            Representation of the game board
 	 * @param me
-	 *            Color which the player is playing
-	 * @param depth
-	 *            Depth of the search tree
-	 * @param alpha
-	 *            Lowest value range, used for pruning
-	 * @param beta
-	 *            Highest value range, used for pruning
-	 * @return maximum value achieved from the initial state
+	 *            Side which the player is playing
+	 * @return value of threat found within the positions set
 	 */
-	public Double maxValue(Color[][] board, Color me, int depth, Double alpha, Double beta) {
-		Double val;
-		Double v = -Double.MAX_VALUE;
-		int bestRow, bestCol;
-		depth--;
-		if (depth == 0) {
-			return evaluationFuction(board, me);
-		}
-		for (int row = 0; row < GomokuBoard.ROWS; row++) {
-			for (int col = 0; col < GomokuBoard.COLS; col++) {
-				if (board[row][col] == null && this.hasAdjacentStones(board, row, col)) {
-					board[row][col] = me;
-					val = this.minValue(board, me, depth, alpha, beta);
-					this.successors.put(val, new Move(row, col));
-					if (val > v) {
-						v = val;
-						bestRow = row;
-						bestCol = col;
-					}
-					if (val >= beta) {
-						board[row][col] = null;
-						return val;
-					}
-					if (alpha < val) {
-						alpha = val;
-					}
-					board[row][col] = null;
-				}
-			}
-		}
-		if (v == -Double.MAX_VALUE) {
-			bestRow = this.randInt(2, 5);
-			bestCol = this.randInt(2, 5);
-			this.successors.put(v, new Move(bestRow, bestCol));
-		}
-		return v;
+	@Override
+	protected double threatSearch(int currentRow, int currentCol, int rowStep, int colStep, BitBoard board, int me) {
+		return this.windowValue(board, currentRow * board.cols + currentCol, WindowTable.direction(rowStep, colStep),
+				me);
 	}
 
 	/**
-	 * Part of the Minimax algorithm Calculates minimum value to be achieved from
-	 * the state of the board
+	 * Same as threatSearch, on the window table of the board
 	 * 
 	 * @param board
-	 *            Representation of the state of the game
+	 *            Representation of the game board
+	 * @param start
+	 *            First position of the window, as row * cols + col
+	 * @param direction
+	 *            Index of the direction in WindowTable.ROW_STEPS and
+	 *            COL_STEPS
 	 * @param me
-	 *            Color which the player is playing
-	 * @param depth
-	 *            Depth of the search tree
-	 * @param alpha
-	 *            Lowest value range, used for pruning
-	 * @param beta
-	 *            Highest value range, used for pruning
-	 * @return minimum value achieved from the initial state
+	 *            Side which the player is playing
+	 * @return value of threat found within the window
 	 */
-	private Double minValue(Color[][] board, Color me, int depth, Double alpha, Double beta) {
-		Double val;
-		Double v = Double.MAX_VALUE;
-		depth--;
-		if (depth == 0) {
-			return evaluationFuction(board, me);
-		}
-		for (int row = 0; row < GomokuBoard.ROWS; row++) {
-			for (int col = 0; col < GomokuBoard.COLS; col++) {
-				if (board[row][col] == null && this.hasAdjacentStones(board, row, col)) {
-					board[row][col] = oppositeColor(me);
-					val = this.maxValue(board, me, depth, alpha, beta);
-					if (val < v) {
-						v = val;
-					}
-					if (val <= alpha) {
-						board[row][col] = null;
-						return val;
-					}
-					if (beta > val) {
-						beta = val;
-					}
-					board[row][col] = null;
-				}
-			}
-		}
-		return v;
+	@Override
+	protected double windowValue(BitBoard board, int start, int direction, int me) {
+		int window = encode(start, direction, board);
+		return tables(board.winLength).threats[me][window & 0xF][window >>> 4];
 	}
 
 	/**
-	 * Check if the position has any stones placed around it
+	 * Classifies the threat a side has in a set of win length + 1 adjacent
+	 * positions, with the same patterns threatSearch scores
 	 * 
+	 * @param start
+	 *            First position of the window, as row * cols + col
+	 * @param direction
+	 *            Index of the direction in WindowTable.ROW_STEPS and
+	 *            COL_STEPS
 	 * @param board
 	 *            Representation of the game board
-	 * @param row
-	 *            Position row
-	 * @param col
-	 *            Position column
-	 * @return true if the position has any  adjacent stones, false otherwise
+	 * @param me
+	 *            Side whose threats are classified
+	 * @return threat of the side found within the positions, null if none
 	 */
-	private boolean hasAdjacentStones(Color[][] board, int row, int col) {
-		boolean result = false;
-		int upperRow = row - 1;
-		int belowRow = row + 1;
-		int leftCol = col - 1;
-		int rightCol = col + 1;
-		if (upperRow >= 0) {
-			if (leftCol >= 0) {
-				result = result || (board[upperRow][leftCol] != null);
-			}
-			if (rightCol < GomokuBoard.COLS) {
-				result = result || (board[upperRow][rightCol] != null);
-			}
-			result = result || (board[upperRow][col] != null);
-		}
-		if (belowRow < GomokuBoard.ROWS) {
-			if (leftCol >= 0) {
-				result = result || (board[belowRow][leftCol] != null);
-			}
-			if (rightCol < GomokuBoard.COLS) {
-				result = result || (board[belowRow][rightCol] != null);
-			}
-			result = result || (board[belowRow][col] != null);
-		}
-		if (leftCol >= 0) {
-			result = result || (board[row][leftCol] != null);
+	static Threat classify(int start, int direction, BitBoard board, int me) {
+		int window = encode(start, direction, board);
+		return tables(board.winLength).threatTypes[me][window & 0xF][window >>> 4];
+	}
+
+	/**
+	 * Returns the threat tables of a win length, building them the first time
+	 * it is evaluated. Two threads may both build them, the fields of the
+	 * tables are final so either copy is seen complete
+	 * 
+	 * @param winLength
+	 *            Number of stones in a row needed to win
+	 * @return threat tables
+	 */
+	private static Tables tables(int winLength) {
+		if (winLength < MIN_WIN_LENGTH || winLength > MAX_WIN_LENGTH) {
+			throw new IllegalArgumentException(
+					"Lines to win must have from " + MIN_WIN_LENGTH + " to " + MAX_WIN_LENGTH + " stones");
 		}
-		if (rightCol < GomokuBoard.COLS) {
-			result = result || (board[row][rightCol] != null);
+		Tables tables = TABLES[winLength];
+		if (tables == null) {
+			tables = new Tables(winLength);
+			TABLES[winLength] = tables;
 		}
-		return result;
+		return tables;
 	}
 
 	/**
-	 * Searches for possible threats in sets of 6 adjacent positions
+	 * Encodes up to win length + 1 adjacent positions as a base 3 number
 	 * 
-	 * @param currentRow
-	 *            Current row being searched
-	 * @param currentCol
-	 *            Current column being searched
-	 * @param rowStep
-	 *            Row search step
-	 * @param colStep
-	 *            Column search step
+	 * @param start
+	 *            First position of the window, as row * cols + col
+	 * @param direction
+	 *            Index of the direction in WindowTable.ROW_STEPS and
+	 *            COL_STEPS
 	 * @param board
 	 *            Representation of the game board
+	 * @return code of the window shifted left by 4, or'ed with its length
+	 */
+	private static int encode(int start, int direction, BitBoard board) {
+		WindowTable windows = board.windows();
+		int length = windows.length(start, direction);
+		int step = windows.step(direction);
+		int code = 0;
+		for (int k = 0, position = start; k < length; k++, position += step) {
+			code = code * 3 + board.get(position);
+		}
+		return code << 4 | length;
+	}
+
+	/**
+	 * Decodes a window into a string of M (player's stones), O (opponent's
+	 * stones) and _ (empty positions)
+	 * 
+	 * @param code
+	 *            Base 3 encoding of the window
+	 * @param length
+	 *            Number of positions in the window
 	 * @param me
-	 *            Color which the player is playing
-	 * @return value of threat found within 6 positions set
+	 *            Side which the player is playing
+	 * @return string representation of the window
+	 */
+	private static String decode(int code, int length, int me) {
+		char[] stringRow = new char[length];
+		for (int k = length - 1; k >= 0; k--) {
+			int stone = code % 3;
+			stringRow[k] = stone == BitBoard.EMPTY ? '_' : (stone == me ? 'M' : 'O');
+			code /= 3;
+		}
+		return new String(stringRow);
+	}
+
+	/**
+	 * Matches a window against the threat patterns
+	 * 
+	 * @param stringRow
+	 *            Window of up to win length + 1 positions, as returned by
+	 *            decode
+	 * @param winLength
+	 *            Number of stones in a row needed to win
+	 * @param mine
+	 *            Threat patterns of the player
+	 * @param theirs
+	 *            Threat patterns of the opponent
+	 * @return value of threat found within the window
 	 */
-	private Double threatSearch(int currentRow, int currentCol, int rowStep, int colStep, Color[][] board, Color me) {
-		String stringRow = "";
+	private static double patternValue(String stringRow, int winLength, Patterns mine, Patterns theirs) {
 		int myCount = 0;
 		int oppositeCount = 0;
-		int nullCount = 0;
-		Double value = 0.0;
-		for (int k = 0; k < 6; k++) {
-			int row = currentRow + k * rowStep;
-			int col = currentCol + k * colStep;
-			if (!(row < 0 || col < 0 || row >= board.length || col >= board[row].length)) {
-				if (me.equals(board[row][col])) {
-					myCount++;
-					stringRow += "M";
-				} else if (oppositeColor(me).equals(board[row][col])) {
-					oppositeCount++;
-					stringRow += "O";
-				} else if (board[row][col] == null) {
-					nullCount++;
-					stringRow += "_";
-				}
-			} else {
-				break;
+		for (int k = 0; k < stringRow.length(); k++) {
+			if (stringRow.charAt(k) == 'M') {
+				myCount++;
+			} else if (stringRow.charAt(k) == 'O') {
+				oppositeCount++;
 			}
 		}
-		if (stringRow.length() >= 5) {
-			if (myCount == 5 || stringRow.contains("MMMMM")) {
+		double value = 0.0;
+		if (stringRow.length() >= winLength) {
+			if (myCount == winLength || stringRow.contains(mine.five)) {
 				value += Threat.FIVE.getWeight();
-			} else if (oppositeCount == 5 || stringRow.contains("OOOOO")) {
+			} else if (oppositeCount == winLength || stringRow.contains(theirs.five)) {
 				value += -(2 * Threat.FIVE.getWeight());
-			} else if (stringRow.equals("_MMMM_")) {
+			} else if (matches(stringRow, mine.straightFours, true)) {
 				value += Threat.STRAIGHT_FOUR.getWeight();
-			} else if (stringRow.contains("_MMMM") || stringRow.contains("MMMM_") || stringRow.contains("M_MMM")
-				|| stringRow.contains("MM_MM") || stringRow.contains("MMM_M")) {
+			} else if (matches(stringRow, mine.fours, false)) {
 				value += Threat.FOUR.getWeight();
-			} else if (stringRow.equals("__MMM_") || stringRow.equals("___MMM")
-				|| stringRow.equals("MMM___") || stringRow.equals("_MMM__")) {
+			} else if (matches(stringRow, mine.openThrees, true)) {
 				value += Threat.OPEN_THREE.getWeight();
-			} else if (stringRow.contains("MMM__") || stringRow.contains("_MMM_")
-				|| stringRow.contains("M_MM_") || stringRow.contains("_M_MM")
-				|| stringRow.contains("M_M_M") || stringRow.contains("MM_M_")
-				|| stringRow.contains("_MM_M") || stringRow.contains("__MMM")) {
+			} else if (matches(stringRow, mine.threes, false)) {
 				value += Threat.THREE.getWeight();	
-			} else if (stringRow.contains("___MM") || stringRow.contains("___MM")
-				|| stringRow.contains("_MM__") || stringRow.contains("__MM_")
-				|| stringRow.contains("M_M__") || stringRow.contains("M__M_")
-				|| stringRow.contains("M___M") || stringRow.contains("_M__M")
-				|| stringRow.contains("__M_M")) {
+			} else if (matches(stringRow, mine.twos, false)) {
 				value += Threat.TWO.getWeight();
-			} else if (stringRow.equals("_OOOO_")) {
+			} else if (matches(stringRow, theirs.straightFours, true)) {
 				value += -(10 * Threat.STRAIGHT_FOUR.getWeight());
-			} else if (stringRow.contains("_OOOO") || stringRow.contains("OOOO_") || stringRow.contains("O_OOO")
-				|| stringRow.contains("OO_OO") || stringRow.contains("OOO_O")) {
+			} else if (matches(stringRow, theirs.fours, false)) {
 				value += -(10 * Threat.FOUR.getWeight());
-			} else if (stringRow.equals("__OOO_") || stringRow.equals("___OOO")
-				|| stringRow.equals("OOO___") || stringRow.equals("_OOO__")) {
+			} else if (matches(stringRow, theirs.openThrees, true)) {
 				value += -(3 * Threat.OPEN_THREE.getWeight());
-			} else if (stringRow.contains("OOO__") || stringRow.contains("_OOO_")
-				|| stringRow.contains("O_OO_") || stringRow.contains("_O_OO")
-				|| stringRow.contains("O_O_O") || stringRow.contains("OO_O_")
-				|| stringRow.contains("_OO_O") || stringRow.contains("__OOO")) {
+			} else if (matches(stringRow, theirs.threes, false)) {
 				value += -(3 * Threat.THREE.getWeight());	
-			} else if (stringRow.contains("___OO") || stringRow.contains("___OO")
-				|| stringRow.contains("_OO__") || stringRow.contains("__OO_")
-				|| stringRow.contains("O_O__") || stringRow.contains("O__O_")
-				|| stringRow.contains("O___O") || stringRow.contains("_O__O")
-				|| stringRow.contains("__O_O")) {
+			} else if (matches(stringRow, theirs.twos, false)) {
 				value += -(3 * Threat.TWO.getWeight());
 			}
 		}
@@ -278,33 +306,67 @@ public class ThreatModification extends GomokuPlayer {
 	}
 
 	/**
-	 * Returns the opposite color from the one sent as parameter
-	 * 
-	 * @param opposite
-	 *            Player's color
-	 * @return black if the player's color is white, white if the player's color
-	 *         is black
+	 * @param stringRow
+	 *            Window, as returned by decode
+	 * @param patterns
+	 *            Patterns of a threat
+	 * @param whole
+	 *            true if a pattern must match the whole window, false if it
+	 *            may match any part of it
+	 * @return true if any of the patterns matches the window
 	 */
-	private Color oppositeColor(Color opposite) {
-		if (opposite.equals(Color.BLACK)) {
-			return Color.WHITE;
+	private static boolean matches(String stringRow, String[] patterns, boolean whole) {
+		for (String pattern : patterns) {
+			if (whole ? stringRow.equals(pattern) : stringRow.contains(pattern)) {
+				return true;
+			}
 		}
-		return Color.BLACK;
+		return false;
 	}
 
 	/**
-	 * Randomizes an integer inside the range in the parameters
+	 * Lists every window of a length with a number of stones of the player
+	 * and the remaining positions empty
 	 * 
-	 * @param min
-	 *            minimum range value
-	 * @param max
-	 *            maximum range value
-	 * @return random number between minimum and max
+	 * @param length
+	 *            Number of positions
+	 * @param stones
+	 *            Number of stones, no window is listed when it is not positive
+	 * @return windows, as strings of M and _
+	 */
+	private static String[] arrangements(int length, int stones) {
+		List<String> arrangements = new ArrayList<String>();
+		for (int bits = 0; stones > 0 && bits < 1 << length; bits++) {
+			if (Integer.bitCount(bits) == stones) {
+				char[] window = new char[length];
+				for (int k = 0; k < length; k++) {
+					window[k] = (bits >>> (length - 1 - k) & 1) == 1 ? 'M' : '_';
+				}
+				arrangements.add(new String(window));
+			}
+		}
+		return arrangements.toArray(new String[arrangements.size()]);
+	}
+
+	/**
+	 * @param patterns
+	 *            Patterns written with M for the player's stones
+	 * @param stone
+	 *            Character of the stones in the returned patterns
+	 * @return copy of the patterns with the stones replaced
 	 */
-	public int randInt(int min, int max) {
-		Random random = new Random();
-		int randomNum = random.nextInt((max - min) + 1) + min;
-		return randomNum;
+	private static String[] replace(String[] patterns, char stone) {
+		String[] replaced = new String[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			replaced[i] = patterns[i].replace('M', stone);
+		}
+		return replaced;
+	}
+
+	private static String repeat(char c, int count) {
+		char[] repeated = new char[Math.max(0, count)];
+		Arrays.fill(repeated, c);
+		return new String(repeated);
 	}
 
 	/**
@@ -0,0 +1,350 @@
+import java.util.Arrays;
+
+/**
+ * Threat space search: a narrow search that only considers moves creating
+ * fours (victory by continuous fours) or open threes, so it finds forced wins
+ * far deeper than the full width minimax can reach. Threats are classified
+ * with the same patterns ThreatModification.threatSearch scores, and open
+ * threes are played out to check that they threaten an open four
+ * 
+ * @author Leticia Wanderley
+ */
+public class ThreatSpaceSearch {
+
+	/** Maximum number of fours in a row the attacker may play */
+	private final int MAX_FOURS = 12;
+	/** Maximum number of open threes the attacker may play */
+	private final int MAX_THREES = 2;
+	private final int[] ROW_STEPS = WindowTable.ROW_STEPS;
+	private final int[] COL_STEPS = WindowTable.COL_STEPS;
+
+	private final BitBoard board;
+	private final int attacker;
+	private final int defender;
+	private final long deadline;
+	// distance from a position of the stones that can make a threat with it:
+	// the length of the windows the threats are classified in, minus one. A
+	// four needs winLength - 2 of them on a line, an open three one less
+	private final int reach;
+	// replies the defender must try against each open three, indexed by the
+	// number of threes still allowed
+	private final int[][] defenses;
+	private final boolean[] marked;
+	// positions where the attacker would complete a line, see completions
+	private final int[] completions;
+	// positions that may make a threat, from BitBoard.linePositions, one mask
+	// of columns per row for each level of the recursion
+	private final long[][] squares;
+	private int level;
+
+	/**
+	 * @param board
+	 *            Representation of the game board
+	 * @param attacker
+	 *            Side looking for a forced win, to move
+	 * @param deadline
+	 *            System.nanoTime() after which the search gives up
+	 */
+	public ThreatSpaceSearch(BitBoard board, int attacker, long deadline) {
+		this.board = board;
+		this.attacker = attacker;
+		this.defender = BitBoard.opposite(attacker);
+		this.deadline = deadline;
+		this.reach = board.windows().length - 1;
+		this.defenses = new int[MAX_THREES + 1][board.rows * board.cols];
+		this.marked = new boolean[board.rows * board.cols];
+		this.completions = new int[board.rows * board.cols];
+		this.squares = new long[MAX_THREES + MAX_FOURS + 3][board.rows];
+	}
+
+	/**
+	 * Looks for a forced win of the attacker, first with fours only, then
+	 * allowing open threes
+	 * 
+	 * @return first move of the win, as row * cols + col, or -1 if no win was
+	 *         proven
+	 */
+	public int findWin() {
+		int move = this.victoryByFours(MAX_FOURS);
+		if (move < 0) {
+			move = this.victoryByThreats(MAX_THREES);
+		}
+		return move;
+	}
+
+	/**
+	 * Searches a win made only of fours: each four leaves the defender a
+	 * single reply, so the tree is a line per candidate move
+	 * 
+	 * @param fours
+	 *            Number of fours the attacker may still play
+	 * @return winning move, or -1 if none was found
+	 */
+	private int victoryByFours(int fours) {
+		int win = this.winningSquare(this.attacker);
+		if (win >= 0) {
+			return win;
+		}
+		if (fours == 0 || System.nanoTime() > this.deadline || this.winningSquare(this.defender) >= 0) {
+			return -1;
+		}
+		long[] squares = this.squares(this.attacker, this.board.winLength - 2);
+		this.level++;
+		for (int row = 0; row < this.board.rows && win < 0; row++) {
+			for (long cols = squares[row]; cols != 0 && win < 0; cols &= cols - 1) {
+				int col = Long.numberOfTrailingZeros(cols);
+				if (this.board.get(row, col) != BitBoard.EMPTY
+						|| this.board.stonesInLines(row, col, this.attacker, this.reach) < this.board.winLength - 2) {
+					continue;
+				}
+				this.board.make(row, col, this.attacker);
+				boolean won = false;
+				if (this.createsFour(row, col, this.attacker)) {
+					int block = this.completions(row, col);
+					if (block == -2) {
+						won = true; // open four, two squares cannot be blocked
+					} else if (block >= 0) {
+						this.board.make(block / this.board.cols, block % this.board.cols, this.defender);
+						won = this.victoryByFours(fours - 1) >= 0;
+						this.board.unmake(block / this.board.cols, block % this.board.cols);
+					}
+				}
+				this.board.unmake(row, col);
+				if (won) {
+					win = row * this.board.cols + col;
+				}
+			}
+		}
+		this.level--;
+		return win;
+	}
+
+	/**
+	 * Searches a win made of open threes and fours. After an open three the
+	 * defender may stop the open four it threatens or play a four of its own,
+	 * and the attacker must win against all of those replies
+	 * 
+	 * @param threes
+	 *            Number of open threes the attacker may still play
+	 * @return winning move, or -1 if none was found
+	 */
+	private int victoryByThreats(int threes) {
+		int win = this.victoryByFours(MAX_FOURS);
+		if (win >= 0) {
+			return win;
+		}
+		if (threes == 0 || System.nanoTime() > this.deadline || this.winningSquare(this.defender) >= 0) {
+			return -1;
+		}
+		long[] squares = this.squares(this.attacker, this.board.winLength - 3);
+		this.level++;
+		for (int row = 0; row < this.board.rows && win < 0; row++) {
+			for (long cols = squares[row]; cols != 0 && win < 0; cols &= cols - 1) {
+				int col = Long.numberOfTrailingZeros(cols);
+				if (this.board.get(row, col) != BitBoard.EMPTY || !this.board.hasAdjacentStones(row, col)
+						|| this.board.stonesInLines(row, col, this.attacker, this.reach) < this.board.winLength - 3) {
+					continue;
+				}
+				this.board.make(row, col, this.attacker);
+				int count = this.defenses(row, col, this.defenses[threes]);
+				boolean won = count > 0;
+				for (int i = 0; i < count && won; i++) {
+					int reply = this.defenses[threes][i];
+					this.board.make(reply / this.board.cols, reply % this.board.cols, this.defender);
+					won = this.victoryByThreats(threes - 1) >= 0;
+					this.board.unmake(reply / this.board.cols, reply % this.board.cols);
+				}
+				this.board.unmake(row, col);
+				if (won) {
+					win = row * this.board.cols + col;
+				}
+			}
+		}
+		this.level--;
+		return win;
+	}
+
+	/**
+	 * Checks if the stone just placed on a position is part of a four of its
+	 * side in any of the windows that contain it
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @param side
+	 *            Side of the stone
+	 * @return true if the four was created
+	 */
+	private boolean createsFour(int row, int col, int side) {
+		WindowTable windows = this.board.windows();
+		int position = row * this.board.cols + col;
+		for (int d = 0; d < 4; d++) {
+			for (int k = 0; k < windows.count(position, d); k++) {
+				int start = windows.start(position, d, k);
+				ThreatModification.Threat threat = ThreatModification.classify(start, d, this.board, side);
+				if (threat == ThreatModification.Threat.FOUR || threat == ThreatModification.Threat.STRAIGHT_FOUR) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the positions where the attacker would complete a winning line
+	 * through the stone just placed
+	 * 
+	 * @param row
+	 *            Position row of the stone
+	 * @param col
+	 *            Position column of the stone
+	 * @return the only such position, -2 if there are several, -1 if none
+	 */
+	private int completions(int row, int col) {
+		int count = this.completions(row, col, this.completions);
+		return count == 0 ? -1 : (count == 1 ? this.completions[0] : -2);
+	}
+
+	/**
+	 * Lists the positions where the attacker would complete a winning line
+	 * through the stone just placed. A position lies on a single line
+	 * through the stone, so none is listed twice
+	 * 
+	 * @param row
+	 *            Position row of the stone
+	 * @param col
+	 *            Position column of the stone
+	 * @param completions
+	 *            Filled with the positions, as row * cols + col
+	 * @return number of positions
+	 */
+	private int completions(int row, int col, int[] completions) {
+		int count = 0;
+		for (int d = 0; d < 4; d++) {
+			for (int k = 1 - this.board.winLength; k < this.board.winLength; k++) {
+				int r = row + k * ROW_STEPS[d];
+				int c = col + k * COL_STEPS[d];
+				if (r >= 0 && c >= 0 && r < this.board.rows && c < this.board.cols
+						&& this.board.get(r, c) == BitBoard.EMPTY && this.board.makesWin(r, c, this.attacker)) {
+					completions[count++] = r * this.board.cols + c;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Lists the defender's replies to the open three just played. The
+	 * windows that hold the three only tell where to look: the three is only
+	 * open if one of their empty positions gives the attacker a four with two
+	 * completions, which a three blocked beyond the window, by the edge of
+	 * the board or an opponent's stone, does not. Any other reply leaves such
+	 * a four, and its completions, as they are, so the replies are those
+	 * positions and completions, and every move that gives the defender a
+	 * four
+	 * 
+	 * @param row
+	 *            Position row of the stone that made the three
+	 * @param col
+	 *            Position column of the stone that made the three
+	 * @param defenses
+	 *            Filled with the replies
+	 * @return number of replies, 0 if the stone made no open three
+	 */
+	private int defenses(int row, int col, int[] defenses) {
+		Arrays.fill(this.marked, false);
+		int count = 0;
+		WindowTable windows = this.board.windows();
+		int position = row * this.board.cols + col;
+		for (int d = 0; d < 4; d++) {
+			for (int k = 0; k < windows.count(position, d); k++) {
+				int start = windows.start(position, d, k);
+				ThreatModification.Threat threat = ThreatModification.classify(start, d, this.board, this.attacker);
+				if (threat != ThreatModification.Threat.OPEN_THREE) {
+					continue;
+				}
+				int length = windows.length(start, d);
+				for (int j = 0, square = start; j < length; j++, square += windows.step(d)) {
+					if (this.board.get(square) != BitBoard.EMPTY || this.marked[square]) {
+						continue;
+					}
+					this.board.make(square / this.board.cols, square % this.board.cols, this.attacker);
+					int completions = this.completions(square / this.board.cols, square % this.board.cols,
+							this.completions);
+					this.board.unmake(square / this.board.cols, square % this.board.cols);
+					if (completions < 2) {
+						continue;
+					}
+					this.marked[square] = true;
+					defenses[count++] = square;
+					for (int i = 0; i < completions; i++) {
+						if (!this.marked[this.completions[i]]) {
+							this.marked[this.completions[i]] = true;
+							defenses[count++] = this.completions[i];
+						}
+					}
+				}
+			}
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long[] squares = this.squares(this.defender, this.board.winLength - 2);
+		for (int r = 0; r < this.board.rows; r++) {
+			for (long cols = squares[r]; cols != 0; cols &= cols - 1) {
+				int c = Long.numberOfTrailingZeros(cols);
+				int move = r * this.board.cols + c;
+				if (this.board.get(r, c) == BitBoard.EMPTY && !this.marked[move]
+						&& this.board.stonesInLines(r, c, this.defender, this.reach) >= this.board.winLength - 2) {
+					this.board.make(r, c, this.defender);
+					if (this.createsFour(r, c, this.defender)) {
+						this.marked[move] = true;
+						defenses[count++] = move;
+					}
+					this.board.unmake(r, c);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds a position where a side would complete a winning line
+	 * 
+	 * @param side
+	 *            Side to check
+	 * @return position as row * cols + col, or -1 if there is none
+	 */
+	private int winningSquare(int side) {
+		long[] squares = this.squares(side, this.board.winLength - 1);
+		for (int row = 0; row < this.board.rows; row++) {
+			for (long cols = squares[row]; cols != 0; cols &= cols - 1) {
+				int col = Long.numberOfTrailingZeros(cols);
+				if (this.board.get(row, col) == BitBoard.EMPTY
+						&& this.board.stonesInLines(row, col, side, this.reach) >= this.board.winLength - 1
+						&& this.board.makesWin(row, col, side)) {
+					return row * this.board.cols + col;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the positions where a side may make a threat, on the masks of the
+	 * current level of the recursion. They are visited row by row, in the
+	 * order of their indexes
+	 * 
+	 * @param side
+	 *            Side making the threat
+	 * @param stones
+	 *            Number of stones of the side needed on a line
+	 * @return columns of the positions of each row, as bits
+	 */
+	private long[] squares(int side, int stones) {
+		long[] squares = this.squares[this.level];
+		this.board.linePositions(side, this.reach, stones, squares);
+		return squares;
+	}
+}
@@ -0,0 +1,398 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a match between two gomoku players without the graphical framework.
+ * The games run concurrently on a thread pool, with new player instances for
+ * each game, and the players swap colors from one game to the next. The
+ * players that take the size of their search tables in their constructor
+ * share a memory budget, split among the games played at the same time. Every
+ * game has its own seed, derived from the seed of the match, so a match can
+ * be replayed (searches stopped by the time limit may still pick different
+ * moves). At the end it prints the score, the Elo difference between the
+ * players and the percentiles of the time each one took per move. Games are
+ * played on the framework board unless a size and a win length are given,
+ * such as 15 and 5 for gomoku on a standard board or 19 and 6 for a
+ * Connect6-like line length. With a cache file, the alpha-beta players of
+ * every game share a position cache kept in it, created if needed
+ * 
+ * Usage: java Tournament playerA playerB [games] [threads] [seed] [time limit]
+ * [size] [win length] [cache file]
+ * 
+ * @author Leticia Wanderley
+ */
+public class Tournament {
+
+	private static final int GAMES = 100;
+	private static final long SEED = 150721453L;
+	private static final long TIME_LIMIT = 1000;
+	private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+	private static final int CACHE_MEGABYTES = 256;
+	/** Memory budget of the search tables of all the games being played */
+	private static final int MEMORY_MEGABYTES = 128;
+	/** Largest memory budget of the search tables of a player */
+	private static final int TABLE_MEGABYTES = 16;
+
+	private final Class<? extends GomokuPlayer> playerA;
+	private final Class<? extends GomokuPlayer> playerB;
+	private final long seed;
+	private final long timeLimit;
+	private final int size;
+	private final int winLength;
+	// memory budget of the search tables of each player
+	private int tableMegabytes = TABLE_MEGABYTES;
+	private PositionCache cache;
+
+	/**
+	 * Result of a single game
+	 */
+	static class Game {
+		/** 1 if player A won, -1 if player B won, 0 for a draw */
+		int result;
+		boolean aIsBlack;
+		/** Time of each move of the players, in nanoseconds */
+		long[][] latencies = new long[2][];
+		/** Description of an illegal move, null if there was none */
+		String illegal;
+	}
+
+	/**
+	 * @param playerA
+	 *            Class of the first player
+	 * @param playerB
+	 *            Class of the second player
+	 * @param seed
+	 *            Seed of the match
+	 * @param timeLimit
+	 *            Time limit per move of the alpha-beta players, in
+	 *            milliseconds
+	 * @param size
+	 *            Number of rows and columns of the board
+	 * @param winLength
+	 *            Number of stones in a row needed to win
+	 */
+	public Tournament(Class<? extends GomokuPlayer> playerA, Class<? extends GomokuPlayer> playerB, long seed,
+			long timeLimit, int size, int winLength) {
+		this.playerA = playerA;
+		this.playerB = playerB;
+		this.seed = seed;
+		this.timeLimit = timeLimit;
+		this.size = size;
+		this.winLength = winLength;
+	}
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java Tournament playerA playerB [games] [threads] [seed] [time limit] [size]"
+					+ " [win length] [cache file]");
+			return;
+		}
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : GAMES;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : SEED;
+		long timeLimit = args.length > 5 ? Long.parseLong(args[5]) : TIME_LIMIT;
+		int size = args.length > 6 ? Integer.parseInt(args[6]) : GomokuBoard.ROWS;
+		int winLength = args.length > 7 ? Integer.parseInt(args[7]) : BitBoard.WIN_LENGTH;
+		Tournament tournament = new Tournament(playerClass(args[0]), playerClass(args[1]), seed, timeLimit, size,
+				winLength);
+		if (args.length > 8) {
+			tournament.setPositionCache(PositionCache.open(new File(args[8]), CACHE_MEGABYTES, size, size, winLength));
+		}
+		List<Game> results = tournament.play(games, threads);
+		tournament.printSummary(results, System.out);
+		if (tournament.cache != null) {
+			tournament.cache.flush();
+		}
+	}
+
+	/**
+	 * @param cache
+	 *            Position cache given to the alpha-beta players of every game,
+	 *            null for none
+	 */
+	public void setPositionCache(PositionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Plays the games of the match
+	 * 
+	 * @param games
+	 *            Number of games
+	 * @param threads
+	 *            Number of games played at the same time
+	 * @return results of the games, in the order they were started
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for the games
+	 */
+	public List<Game> play(int games, int threads) throws InterruptedException {
+		this.tableMegabytes = Math.max(1, Math.min(TABLE_MEGABYTES, MEMORY_MEGABYTES / (2 * threads)));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Game>> futures = new ArrayList<Future<Game>>();
+			for (int g = 0; g < games; g++) {
+				final int number = g;
+				futures.add(pool.submit(new Callable<Game>() {
+					@Override
+					public Game call() {
+						return Tournament.this.playGame(number);
+					}
+				}));
+			}
+			List<Game> results = new ArrayList<Game>();
+			for (Future<Game> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Plays one game. Player A has black (and the first move) in the even
+	 * games. A player that returns an illegal move loses the game
+	 * 
+	 * @param number
+	 *            Number of the game in the match
+	 * @return result of the game
+	 */
+	Game playGame(int number) {
+		Game game = new Game();
+		game.aIsBlack = number % 2 == 0;
+		long gameSeed = this.seed * 31 + number;
+		GomokuPlayer a = this.newPlayer(this.playerA, gameSeed);
+		GomokuPlayer b = this.newPlayer(this.playerB, ~gameSeed);
+		GomokuPlayer[] players = game.aIsBlack ? new GomokuPlayer[] { a, b } : new GomokuPlayer[] { b, a };
+		Color[] colors = { Color.BLACK, Color.WHITE };
+		Color[][] board = new Color[this.size][this.size];
+		int cells = this.size * this.size;
+		// player A is index 0 of the results, player B index 1
+		long[][] latencies = new long[2][cells];
+		int[] moves = new int[2];
+		for (int turn = 0; turn < cells && game.result == 0 && game.illegal == null; turn++) {
+			int mover = turn % 2;
+			int index = (mover == 0) == game.aIsBlack ? 0 : 1;
+			long start = System.nanoTime();
+			Move move = players[mover].chooseMove(copy(board), colors[mover]);
+			latencies[index][moves[index]++] = System.nanoTime() - start;
+			if (move == null || move.row < 0 || move.col < 0 || move.row >= this.size || move.col >= this.size
+					|| board[move.row][move.col] != null) {
+				game.illegal = players[mover].getClass().getSimpleName() + " played "
+						+ (move == null ? "no move" : move.row + "," + move.col) + " in game " + number;
+				game.result = index == 0 ? -1 : 1;
+			} else {
+				board[move.row][move.col] = colors[mover];
+				if (this.isWin(board, move.row, move.col)) {
+					game.result = index == 0 ? 1 : -1;
+				}
+			}
+		}
+		game.latencies[0] = Arrays.copyOf(latencies[0], moves[0]);
+		game.latencies[1] = Arrays.copyOf(latencies[1], moves[1]);
+		return game;
+	}
+
+	/**
+	 * Prints the score of the match, the Elo difference of player A over
+	 * player B and the move time percentiles of both players
+	 * 
+	 * @param results
+	 *            Results of the games
+	 * @param out
+	 *            Stream the summary is printed to
+	 */
+	public void printSummary(List<Game> results, PrintStream out) {
+		int[] wins = new int[2];
+		int[] blackWins = new int[2];
+		int draws = 0;
+		int[] moves = new int[2];
+		for (Game game : results) {
+			moves[0] += game.latencies[0].length;
+			moves[1] += game.latencies[1].length;
+		}
+		long[][] latencies = { new long[moves[0]], new long[moves[1]] };
+		moves = new int[2];
+		for (Game game : results) {
+			if (game.illegal != null) {
+				out.println("Illegal move: " + game.illegal);
+			}
+			if (game.result == 0) {
+				draws++;
+			} else {
+				int winner = game.result > 0 ? 0 : 1;
+				wins[winner]++;
+				if ((winner == 0) == game.aIsBlack) {
+					blackWins[winner]++;
+				}
+			}
+			for (int p = 0; p < 2; p++) {
+				System.arraycopy(game.latencies[p], 0, latencies[p], moves[p], game.latencies[p].length);
+				moves[p] += game.latencies[p].length;
+			}
+		}
+		String[] names = { this.playerA.getSimpleName(), this.playerB.getSimpleName() };
+		int games = results.size();
+		out.println(String.format("%d games: %s %d wins (%d as black), %s %d wins (%d as black), %d draws", games,
+				names[0], wins[0], blackWins[0], names[1], wins[1], blackWins[1], draws));
+		double score = (wins[0] + 0.5 * draws) / games;
+		out.println(String.format("%s score %.1f%%, Elo difference %s", names[0], 100 * score, elo(score)));
+		for (int p = 0; p < 2; p++) {
+			long[] times = latencies[p];
+			Arrays.sort(times);
+			StringBuilder line = new StringBuilder(String.format("%s move time (ms):", names[p]));
+			for (double percentile : PERCENTILES) {
+				line.append(String.format(" p%.0f %.1f", percentile, percentile(times, percentile) / 1e6));
+			}
+			out.println(line);
+		}
+	}
+
+	/**
+	 * Converts a score into an Elo rating difference
+	 * 
+	 * @param score
+	 *            Fraction of the points won by the player
+	 * @return rating difference, as text since it is infinite when a player
+	 *         scored every point
+	 */
+	static String elo(double score) {
+		if (score <= 0) {
+			return "-inf";
+		} else if (score >= 1) {
+			return "+inf";
+		}
+		// adding 0.0 turns -0.0 into 0.0
+		return String.format("%+.0f", -400 * Math.log10(1 / score - 1) + 0.0);
+	}
+
+	/**
+	 * @param sorted
+	 *            Values in ascending order
+	 * @param percentile
+	 *            Percentile, from 0 to 100
+	 * @return value below which the percentile of the values fall (nearest
+	 *         rank), 0 if there are no values
+	 */
+	static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Creates a player for a game, seeding its random choices. Players with a
+	 * constructor that takes the memory budget of their search tables are
+	 * given their share of the budget of the match
+	 * 
+	 * @param type
+	 *            Class of the player
+	 * @param seed
+	 *            Seed of the player in this game
+	 * @return new player
+	 */
+	private GomokuPlayer newPlayer(Class<? extends GomokuPlayer> type, long seed) {
+		GomokuPlayer player;
+		try {
+			try {
+				player = type.getDeclaredConstructor(int.class).newInstance(this.tableMegabytes);
+			} catch (NoSuchMethodException e) {
+				player = type.getDeclaredConstructor().newInstance();
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Cannot create a " + type.getName(), e);
+		}
+		if (player instanceof AlphaBetaPlayer) {
+			((AlphaBetaPlayer) player).setSeed(seed);
+			((AlphaBetaPlayer) player).setTimeLimit(this.timeLimit);
+			((AlphaBetaPlayer) player).setWinLength(this.winLength);
+			((AlphaBetaPlayer) player).setPositionCache(this.cache);
+		} else if (player instanceof MonteCarloPlayer) {
+			((MonteCarloPlayer) player).setSeed(seed);
+			((MonteCarloPlayer) player).setTimeLimit(this.timeLimit);
+			((MonteCarloPlayer) player).setWinLength(this.winLength);
+		} else if (player instanceof RandomPlayer) {
+			((RandomPlayer) player).setSeed(seed);
+		}
+		return player;
+	}
+
+	/**
+	 * Finds a player class by its name
+	 * 
+	 * @param name
+	 *            Name of the class
+	 * @return the class
+	 */
+	private static Class<? extends GomokuPlayer> playerClass(String name) {
+		try {
+			return Class.forName(name).asSubclass(GomokuPlayer.class);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unknown player " + name, e);
+		} catch (ClassCastException e) {
+			throw new IllegalArgumentException(name + " is not a GomokuPlayer", e);
+		}
+	}
+
+	/**
+	 * @param board
+	 *            Representation of the game board
+	 * @return copy of the board, so players cannot change the real one
+	 */
+	private static Color[][] copy(Color[][] board) {
+		Color[][] copy = new Color[board.length][];
+		for (int row = 0; row < board.length; row++) {
+			copy[row] = board[row].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Checks if the stone on a position is part of a line of its color at
+	 * least as long as the win length
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @return true if the stone wins the game
+	 */
+	private boolean isWin(Color[][] board, int row, int col) {
+		int[] rowSteps = { 0, 1, 1, 1 };
+		int[] colSteps = { 1, 0, 1, -1 };
+		for (int d = 0; d < 4; d++) {
+			int count = 1;
+			for (int sign = -1; sign <= 1; sign += 2) {
+				int r = row + sign * rowSteps[d];
+				int c = col + sign * colSteps[d];
+				while (r >= 0 && c >= 0 && r < board.length && c < board[r].length && board[r][c] == board[row][col]) {
+					count++;
+					r += sign * rowSteps[d];
+					c += sign * colSteps[d];
+				}
+			}
+			if (count >= this.winLength) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
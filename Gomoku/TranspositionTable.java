@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table that stores results of previous searches, indexed by
+ * the Zobrist hash of the position. Each bucket has two slots: the first one
+ * keeps the deepest search seen for that bucket, the second one is always
+ * replaced. The table can be shared by several search threads without locks:
+ * the stored key is XORed with the rest of the entry, so an entry torn by
+ * concurrent writes does not match its key and is treated as a miss
+ * 
+ * @author Leticia Wanderley
+ */
+public class TranspositionTable {
+
+	/** The stored score is the exact minimax value */
+	public static final int EXACT = 0;
+	/** The stored score is a lower bound (the search failed high) */
+	public static final int LOWER = 1;
+	/** The stored score is an upper bound (the search failed low) */
+	public static final int UPPER = 2;
+
+	/** Entry size in bytes: key + score + packed depth, bound and move */
+	private static final int ENTRY_BYTES = 8 + 8 + 4;
+
+	private final long[] keys;
+	private final long[] scores;
+	private final int[] info;
+	private final int mask;
+	private int generation;
+
+	/**
+	 * Creates a table that fits in the given memory budget
+	 * 
+	 * @param megabytes
+	 *            Memory budget of the table
+	 */
+	public TranspositionTable(int megabytes) {
+		long entries = Math.max(2, ((long) megabytes << 20) / ENTRY_BYTES);
+		int buckets = Integer.highestOneBit((int) Math.min(entries / 2, 1 << 29));
+		this.keys = new long[2 * buckets];
+		this.scores = new long[2 * buckets];
+		this.info = new int[2 * buckets];
+		this.mask = buckets - 1;
+	}
+
+	/**
+	 * Marks the beginning of a new search, so entries from previous searches
+	 * can be replaced by shallower ones
+	 */
+	public void newSearch() {
+		this.generation = (this.generation + 1) & 0xFF;
+	}
+
+	/**
+	 * Empties the table
+	 */
+	public void clear() {
+		Arrays.fill(this.info, 0);
+	}
+
+	/**
+	 * Looks for a position in the table
+	 * 
+	 * @param key
+	 *            Hash of the position
+	 * @param entry
+	 *            Filled with the stored result if the position is found
+	 * @return true if the position is stored, false otherwise
+	 */
+	public boolean probe(long key, Entry entry) {
+		int slot = ((int) key & this.mask) << 1;
+		for (int i = slot; i < slot + 2; i++) {
+			int info = this.info[i];
+			long score = this.scores[i];
+			if (info != 0 && (this.keys[i] ^ score ^ info) == key) {
+				entry.depth = depthOf(info);
+				entry.bound = (info >>> 5) & 0x3;
+				int move = (info >>> 7) & 0xFFFF;
+				entry.move = move == 0xFFFF ? -1 : move;
+				entry.score = Double.longBitsToDouble(score);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stores the result of a search
+	 * 
+	 * @param key
+	 *            Hash of the position
+	 * @param depth
+	 *            Depth of the search
+	 * @param bound
+	 *            EXACT, LOWER or UPPER
+	 * @param score
+	 *            Score found by the search
+	 * @param move
+	 *            Best move found, as row * COLS + col, or -1 if none
+	 */
+	public void store(long key, int depth, int bound, double score, int move) {
+		int slot = ((int) key & this.mask) << 1;
+		int stored = this.info[slot];
+		if (stored != 0 && (this.keys[slot] ^ this.scores[slot] ^ stored) != key && depth < depthOf(stored)
+				&& generationOf(stored) == this.generation) {
+			slot++; // keep the deeper entry, use the always replace slot
+		}
+		int info = 1 << 31 | this.generation << 23 | (move & 0xFFFF) << 7 | bound << 5 | depth;
+		long bits = Double.doubleToRawLongBits(score);
+		this.info[slot] = info;
+		this.scores[slot] = bits;
+		this.keys[slot] = key ^ bits ^ info;
+	}
+
+	private static int depthOf(int info) {
+		return info & 0x1F;
+	}
+
+	private static int generationOf(int info) {
+		return (info >>> 23) & 0xFF;
+	}
+
+	/**
+	 * Result of a search read from the table. Each search thread owns one, so
+	 * probing the table does not allocate
+	 */
+	public static class Entry {
+		public int depth;
+		public int bound;
+		public int move;
+		public double score;
+	}
+}
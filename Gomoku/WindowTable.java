@@ -0,0 +1,162 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Windows of a board size: the sets of adjacent positions in a row, column
+ * or diagonal that threatSearch scores. For each position and direction the
+ * table lists the first position of every window that contains it, so the
+ * windows a move changes are found without bound checks. A table is built
+ * once for each board size and window length and shared by every board
+ * 
+ * @author Leticia Wanderley
+ */
+public class WindowTable {
+
+	/** Row step of each direction: horizontal, vertical, diagonal, anti diagonal */
+	public static final int[] ROW_STEPS = { 0, 1, 1, 1 };
+	/** Column step of each direction */
+	public static final int[] COL_STEPS = { 1, 0, 1, -1 };
+
+	private static final ConcurrentMap<Long, WindowTable> TABLES = new ConcurrentHashMap<Long, WindowTable>();
+
+	/** Number of positions of each window */
+	public final int length;
+
+	// first positions of the windows that contain each position in each
+	// direction, indexed by (position * 4 + direction) * length + k, where the
+	// window starts k steps back from the position
+	private final int[] starts;
+	// number of those windows, indexed by position * 4 + direction
+	private final int[] counts;
+	// number of positions of the window that starts on each position in each
+	// direction, shorter than length near the edges of the board
+	private final int[] lengths;
+	// difference between the indexes of consecutive positions of a window
+	private final int[] steps = new int[4];
+
+	/**
+	 * @param rows
+	 *            Number of rows of the board
+	 * @param cols
+	 *            Number of columns of the board
+	 * @param length
+	 *            Number of positions of each window
+	 */
+	private WindowTable(int rows, int cols, int length) {
+		this.length = length;
+		this.starts = new int[rows * cols * 4 * length];
+		this.counts = new int[rows * cols * 4];
+		this.lengths = new int[rows * cols * 4];
+		for (int d = 0; d < 4; d++) {
+			this.steps[d] = ROW_STEPS[d] * cols + COL_STEPS[d];
+		}
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				for (int d = 0; d < 4; d++) {
+					int index = (row * cols + col) * 4 + d;
+					int r = row;
+					int c = col;
+					while (this.lengths[index] < length && r < rows && c >= 0 && c < cols) {
+						this.lengths[index]++;
+						r += ROW_STEPS[d];
+						c += COL_STEPS[d];
+					}
+					for (int k = 0; k < length; k++) {
+						int startRow = row - k * ROW_STEPS[d];
+						int startCol = col - k * COL_STEPS[d];
+						if (startRow < 0 || startCol < 0 || startCol >= cols) {
+							break;
+						}
+						this.starts[index * length + this.counts[index]++] = startRow * cols + startCol;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the table of a board size, building it the first time the size
+	 * is used
+	 * 
+	 * @param rows
+	 *            Number of rows of the board
+	 * @param cols
+	 *            Number of columns of the board
+	 * @param length
+	 *            Number of positions of each window
+	 * @return table of the windows
+	 */
+	public static WindowTable of(int rows, int cols, int length) {
+		Long key = Long.valueOf((long) rows << 40 | (long) cols << 20 | length);
+		WindowTable table = TABLES.get(key);
+		if (table == null) {
+			table = new WindowTable(rows, cols, length);
+			WindowTable previous = TABLES.putIfAbsent(key, table);
+			if (previous != null) {
+				table = previous;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @param position
+	 *            Position, as row * cols + col
+	 * @param direction
+	 *            Index of the direction in ROW_STEPS and COL_STEPS
+	 * @return number of windows of the direction that contain the position
+	 */
+	public int count(int position, int direction) {
+		return this.counts[position * 4 + direction];
+	}
+
+	/**
+	 * @param position
+	 *            Position, as row * cols + col
+	 * @param direction
+	 *            Index of the direction in ROW_STEPS and COL_STEPS
+	 * @param k
+	 *            Index of the window, from 0 to count(position, direction) -
+	 *            1, the window that starts on the position first
+	 * @return first position of the window, as row * cols + col
+	 */
+	public int start(int position, int direction, int k) {
+		return this.starts[(position * 4 + direction) * this.length + k];
+	}
+
+	/**
+	 * @param position
+	 *            First position of the window, as row * cols + col
+	 * @param direction
+	 *            Index of the direction in ROW_STEPS and COL_STEPS
+	 * @return number of positions of the window, less than length when it
+	 *         reaches the edge of the board
+	 */
+	public int length(int position, int direction) {
+		return this.lengths[position * 4 + direction];
+	}
+
+	/**
+	 * @param direction
+	 *            Index of the direction in ROW_STEPS and COL_STEPS
+	 * @return what is added to the index of a position, row * cols + col, to
+	 *         get the index of the next position of a window
+	 */
+	public int step(int direction) {
+		return this.steps[direction];
+	}
+
+	/**
+	 * @param rowStep
+	 *            Row step of a direction
+	 * @param colStep
+	 *            Column step of a direction
+	 * @return index of the direction in ROW_STEPS and COL_STEPS
+	 */
+	public static int direction(int rowStep, int colStep) {
+		if (rowStep == 0) {
+			return 0;
+		}
+		return colStep == 0 ? 1 : (colStep > 0 ? 2 : 3);
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.Random;
+
+/**
+ * Random keys used to hash gomoku positions (Zobrist hashing). The hash of a
+ * position is the XOR of the keys of every stone on the board, so placing or
+ * removing a stone updates it with a single XOR
+ * 
+ * @author Leticia Wanderley
+ */
+public class Zobrist {
+
+	/** Key XORed into the hash every time the side to move changes */
+	public static final long SIDE;
+
+	// keys of the largest board, smaller boards use the keys of their rows
+	// and columns
+	private static final long[][][] KEYS = new long[BitBoard.MAX_SIZE][BitBoard.MAX_SIZE][3];
+	private static final long[] PERSPECTIVE = new long[3];
+
+	static {
+		Random random = new Random(150721453L);
+		for (int row = 0; row < BitBoard.MAX_SIZE; row++) {
+			for (int col = 0; col < BitBoard.MAX_SIZE; col++) {
+				KEYS[row][col][BitBoard.BLACK] = random.nextLong();
+				KEYS[row][col][BitBoard.WHITE] = random.nextLong();
+			}
+		}
+		PERSPECTIVE[BitBoard.BLACK] = random.nextLong();
+		PERSPECTIVE[BitBoard.WHITE] = random.nextLong();
+		SIDE = random.nextLong();
+	}
+
+	/**
+	 * Returns the key of a stone of a certain side on a certain position
+	 * 
+	 * @param row
+	 *            Position row
+	 * @param col
+	 *            Position column
+	 * @param side
+	 *            BitBoard.BLACK or BitBoard.WHITE
+	 * @return key of the stone
+	 */
+	public static long key(int row, int col, int side) {
+		return KEYS[row][col][side];
+	}
+
+	/**
+	 * @return hash of every key, in the order they are drawn, so files that
+	 *         store hashes can tell whether they were written with the same
+	 *         keys
+	 */
+	public static long signature() {
+		long signature = SIDE;
+		for (int row = 0; row < BitBoard.MAX_SIZE; row++) {
+			for (int col = 0; col < BitBoard.MAX_SIZE; col++) {
+				signature = signature * 31 + KEYS[row][col][BitBoard.BLACK];
+				signature = signature * 31 + KEYS[row][col][BitBoard.WHITE];
+			}
+		}
+		signature = signature * 31 + PERSPECTIVE[BitBoard.BLACK];
+		return signature * 31 + PERSPECTIVE[BitBoard.WHITE];
+	}
+
+	/**
+	 * Returns the key of the side a search evaluates positions for. Searches
+	 * XOR it into the board hash, so positions evaluated for different players
+	 * do not share table entries
+	 * 
+	 * @param side
+	 *            BitBoard.BLACK or BitBoard.WHITE
+	 * @return key of the point of view
+	 */
+	public static long perspective(int side) {
+		return PERSPECTIVE[side];
+	}
+}
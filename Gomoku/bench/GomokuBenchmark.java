@@ -0,0 +1,175 @@
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Micro benchmarks of the gomoku players on fixed positions: chooseMove
+ * latency and nodes per second for each search depth, and the cost of
+ * evaluationFuction and threatSearch alone. Every measurement also reports
+ * the bytes allocated per operation, so allocations creeping into the search
+ * show up here before they show up in games.
+ * 
+ * Usage: java GomokuBenchmark [maximum depth] [iterations]
+ * 
+ * @author Leticia Wanderley
+ */
+public class GomokuBenchmark {
+
+	private static final int WARMUP_SECONDS = 2;
+	private static final String[] NAMES = { "opening", "midgame", "tactical", "nearfull", "midgame15" };
+	private static final String[][] POSITIONS = {
+			{ "........", "........", "........", "...X....", "....O...", "........", "........", "........" },
+			{ "........", "........", "..OX....", "..XOX...", "...XO...", "....O...", "........", "........" },
+			{ "........", "........", "..XXXO..", "........", ".OOO....", "........", "......X.", "........" },
+			{ "XXOOXXOO", "OO.XO.XX", "XXO..XOO", "O.XXOOXX", "XXOOXX.O", "OOX..OXX", "XX.OX.OO", "OOXXOOXX" },
+			{ "...............", "...............", "...............", "...............", "...............",
+					"......O........", ".....OXX.......", "......XOX......", ".......XO......", "........O......",
+					"...............", "...............", "...............", "...............",
+					"..............." } };
+
+	// results of the measured operations, so the JIT cannot remove them
+	private static double sink;
+
+	/**
+	 * Operation measured by the benchmarks
+	 */
+	private static abstract class Operation {
+		/**
+		 * @return number of search nodes visited, 0 for operations that do not
+		 *         search
+		 */
+		abstract long run();
+	}
+
+	public static void main(String[] args) {
+		int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		AlphaBetaPlayer[] players = { new Player150721453(), new ThreatModification() };
+		System.out.println(String.format("%-48s %14s %14s %14s", "benchmark", "ns/op", "nodes/s", "B/op"));
+		for (final AlphaBetaPlayer player : players) {
+			String name = player.getClass().getSimpleName();
+			for (int p = 0; p < POSITIONS.length; p++) {
+				final Color[][] board = board(POSITIONS[p]);
+				final Color color = toMove(board);
+				final BitBoard bitBoard = new BitBoard(board);
+				final int me = BitBoard.side(color);
+				player.startSearch(bitBoard, me);
+				measure(name + ".evaluation." + NAMES[p], iterations * 1000, new Operation() {
+					@Override
+					long run() {
+						sink += player.evaluationFuction(bitBoard, me);
+						return 0;
+					}
+				});
+				measure(name + ".threatSearch." + NAMES[p], iterations * 100, new Operation() {
+					@Override
+					long run() {
+						for (int row = 0; row < bitBoard.rows; row++) {
+							for (int col = 0; col < bitBoard.cols; col++) {
+								for (int d = 0; d < 4; d++) {
+									sink += player.threatSearch(row, col, WindowTable.ROW_STEPS[d], WindowTable.COL_STEPS[d],
+											bitBoard, me);
+								}
+							}
+						}
+						return 0;
+					}
+				});
+				for (int depth = 2; depth <= maxDepth; depth++) {
+					player.setMaxDepth(depth);
+					// no time limit, every move is searched to the full depth
+					player.setTimeLimit(3600000);
+					measure(name + ".chooseMove." + NAMES[p] + ".depth" + depth, iterations, new Operation() {
+						@Override
+						long run() {
+							player.clearTable();
+							Move move = player.chooseMove(board, color);
+							sink += move == null ? 0 : move.row;
+							return player.getNodes();
+						}
+					});
+				}
+			}
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Runs an operation until the JIT has had time to compile it, then times a
+	 * number of runs and prints the results
+	 * 
+	 * @param name
+	 *            Name of the benchmark
+	 * @param iterations
+	 *            Number of measured runs
+	 * @param operation
+	 *            Operation to be measured
+	 */
+	private static void measure(String name, int iterations, Operation operation) {
+		long warmupEnd = System.nanoTime() + WARMUP_SECONDS * 1000000000L;
+		do {
+			operation.run();
+		} while (System.nanoTime() < warmupEnd);
+		long nodes = 0;
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			nodes += operation.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		bytes = allocatedBytes() - bytes;
+		System.out.println(String.format("%-48s %14.1f %14s %14d", name, (double) elapsed / iterations,
+				nodes == 0 ? "-" : String.format("%.0f", nodes * 1e9 / elapsed), bytes / iterations));
+	}
+
+	/**
+	 * @return bytes allocated so far by the current thread, 0 if the JVM does
+	 *         not track them
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Builds a board from rows of X (black), O (white) and . (empty)
+	 * 
+	 * @param rows
+	 *            Rows of the board
+	 * @return board as received by the players
+	 */
+	private static Color[][] board(String[] rows) {
+		Color[][] board = new Color[rows.length][rows[0].length()];
+		for (int row = 0; row < rows.length; row++) {
+			for (int col = 0; col < rows[row].length(); col++) {
+				char stone = rows[row].charAt(col);
+				board[row][col] = stone == 'X' ? Color.BLACK : (stone == 'O' ? Color.WHITE : null);
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Black plays first, so it is to move whenever both sides have placed the
+	 * same number of stones
+	 * 
+	 * @param board
+	 *            Representation of the game board
+	 * @return color of the side to move
+	 */
+	private static Color toMove(Color[][] board) {
+		int balance = 0;
+		for (Color[] row : board) {
+			for (Color stone : row) {
+				if (stone != null) {
+					balance += Color.BLACK.equals(stone) ? 1 : -1;
+				}
+			}
+		}
+		return balance > 0 ? Color.WHITE : Color.BLACK;
+	}
+}
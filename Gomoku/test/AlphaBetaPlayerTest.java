@@ -0,0 +1,191 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+/**
+ * Checks the values found by the search of the alpha-beta players against a
+ * plain minimax over the same moves, which evaluates every leaf with a full
+ * scan of the board
+ * 
+ * @author Leticia Wanderley
+ */
+public class AlphaBetaPlayerTest {
+
+	private static final double DELTA = 1e-6;
+	private static final int DEPTH = 4;
+	// deeper, so the workers' shared alpha bound and the null windows of
+	// negaScout prune below the root
+	private static final int PRUNING_DEPTH = 6;
+	private static final int[] THREADS = { 2, 4 };
+	// black to move, no forced win for the threat space search
+	private static final String[][] POSITIONS = {
+			{ "........", "........", "..OX....", "..XOX...", "...XO...", "....O...", "........", "........" },
+			{ "........", "........", "...O....", "...XX...", "..OXO...", "........", "........", "........" },
+			{ "........", "........", "........", "...X....", "...O....", "........", "........", "........" } };
+
+	@Test
+	public void deepeningMatchesMinimax() {
+		for (String[] position : POSITIONS) {
+			Player150721453 player = new Player150721453(1);
+			player.setMaxDepth(DEPTH);
+			player.setTimeLimit(3600000);
+			Move move = player.chooseMove(Boards.parse(position), Color.BLACK);
+			SearchStats stats = player.getStats();
+			assertEquals(DEPTH - 1, stats.getIterations());
+			// every iteration, searched with the table filled by the ones
+			// before it, finds the minimax value of its depth
+			for (int i = 0; i < stats.getIterations(); i++) {
+				int plies = stats.getIterationDepth(i) - 1;
+				assertEquals(minimax(position, plies), stats.getIterationValue(i), DELTA);
+			}
+			assertEquals(minimax(position, DEPTH - 1), moveValue(position, move, DEPTH - 1), DELTA);
+		}
+	}
+
+	@Test
+	public void deterministicParallelMatchesSequential() {
+		for (String[] position : POSITIONS) {
+			for (int threads : THREADS) {
+				Player150721453 sequential = player(1);
+				Player150721453 parallel = player(threads);
+				// the second search starts with the table the first filled
+				for (int search = 0; search < 2; search++) {
+					assertSameSearch(sequential, parallel, position);
+				}
+				parallel.setThreads(1);
+			}
+		}
+	}
+
+	@Test
+	public void negaScoutMatchesAlphaBeta() {
+		for (String[] position : POSITIONS) {
+			Player150721453 alphaBeta = player(1);
+			// deterministic, so both play the first of equal moves in board
+			// order
+			Player150721453 negaScout = player(1);
+			negaScout.setPrincipalVariationSearch(true);
+			for (int search = 0; search < 2; search++) {
+				assertSameSearch(alphaBeta, negaScout, position);
+			}
+		}
+	}
+
+	/**
+	 * @param threads
+	 *            Number of threads searching the root
+	 * @return deterministic player searching to PRUNING_DEPTH
+	 */
+	private static Player150721453 player(int threads) {
+		Player150721453 player = new Player150721453(1);
+		player.setThreads(threads);
+		player.setDeterministic(true);
+		player.setMaxDepth(PRUNING_DEPTH);
+		player.setTimeLimit(3600000);
+		return player;
+	}
+
+	/**
+	 * Searches a position, black to move, with two players and checks that
+	 * both play the same move and find the same value on every iteration
+	 * 
+	 * @param expected
+	 *            Player whose search is the reference
+	 * @param actual
+	 *            Player checked against it
+	 * @param position
+	 *            Rows of the board
+	 */
+	private static void assertSameSearch(AlphaBetaPlayer expected, AlphaBetaPlayer actual, String[] position) {
+		Move expectedMove = expected.chooseMove(Boards.parse(position), Color.BLACK);
+		Move actualMove = actual.chooseMove(Boards.parse(position), Color.BLACK);
+		assertEquals(expectedMove.row, actualMove.row);
+		assertEquals(expectedMove.col, actualMove.col);
+		SearchStats expectedStats = expected.getStats();
+		SearchStats actualStats = actual.getStats();
+		assertEquals(expectedStats.getIterations(), actualStats.getIterations());
+		for (int i = 0; i < expectedStats.getIterations(); i++) {
+			assertEquals(expectedStats.getIterationValue(i), actualStats.getIterationValue(i), DELTA);
+		}
+	}
+
+	/**
+	 * Values a position, black to move, with a full width minimax
+	 * 
+	 * @param position
+	 *            Rows of the board
+	 * @param plies
+	 *            Number of moves searched
+	 * @return value of the position for black
+	 */
+	static double minimax(String[] position, int plies) {
+		BitBoard board = new BitBoard(Boards.parse(position));
+		return minimax(evaluator(board), board, BitBoard.BLACK, plies);
+	}
+
+	/**
+	 * Values a move of black with a full width minimax
+	 * 
+	 * @param position
+	 *            Rows of the board
+	 * @param move
+	 *            Move of black
+	 * @param plies
+	 *            Number of moves searched, the move included
+	 * @return value of the move for black
+	 */
+	static double moveValue(String[] position, Move move, int plies) {
+		BitBoard board = new BitBoard(Boards.parse(position));
+		AlphaBetaPlayer evaluator = evaluator(board);
+		assertTrue(board.get(move.row, move.col) == BitBoard.EMPTY);
+		board.make(move.row, move.col, BitBoard.BLACK);
+		return minimax(evaluator, board, BitBoard.WHITE, plies - 1);
+	}
+
+	/**
+	 * @param board
+	 *            Representation of the state of the game
+	 * @return player that scans the whole board to evaluate it, for black
+	 */
+	private static AlphaBetaPlayer evaluator(BitBoard board) {
+		AlphaBetaPlayer evaluator = new Player150721453(1);
+		evaluator.startSearch(board, BitBoard.BLACK);
+		return evaluator;
+	}
+
+	/**
+	 * Minimax over the candidate moves of the board, as the search generates
+	 * them, without pruning or tables
+	 * 
+	 * @param evaluator
+	 *            Player whose evaluation function values the leaves
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param side
+	 *            Side to move
+	 * @param plies
+	 *            Number of moves left to search
+	 * @return value of the position for black
+	 */
+	private static double minimax(AlphaBetaPlayer evaluator, BitBoard board, int side, int plies) {
+		if (plies == 0) {
+			return evaluator.evaluationFuction(board, BitBoard.BLACK);
+		}
+		int count = board.candidateCount();
+		int[] moves = new int[count];
+		System.arraycopy(board.candidates(), 0, moves, 0, count);
+		double best = side == BitBoard.BLACK ? -Double.MAX_VALUE : Double.MAX_VALUE;
+		for (int move : moves) {
+			int row = move / board.cols;
+			int col = move % board.cols;
+			board.make(row, col, side);
+			double value = minimax(evaluator, board, BitBoard.opposite(side), plies - 1);
+			board.unmake(row, col);
+			best = side == BitBoard.BLACK ? Math.max(best, value) : Math.min(best, value);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,35 @@
+import java.awt.Color;
+
+/**
+ * Boards written as text for the tests: one string per row, X for black, O
+ * for white and . for an empty position
+ * 
+ * @author Leticia Wanderley
+ */
+class Boards {
+
+	/**
+	 * @param rows
+	 *            Rows of the board
+	 * @return board as received by the players
+	 */
+	static Color[][] parse(String... rows) {
+		Color[][] board = new Color[rows.length][rows[0].length()];
+		for (int row = 0; row < rows.length; row++) {
+			for (int col = 0; col < rows[row].length(); col++) {
+				char stone = rows[row].charAt(col);
+				board[row][col] = stone == 'X' ? Color.BLACK : (stone == 'O' ? Color.WHITE : null);
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * @param size
+	 *            Number of rows and columns
+	 * @return empty board
+	 */
+	static Color[][] empty(int size) {
+		return new Color[size][size];
+	}
+}
@@ -0,0 +1,83 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the evaluation kept up to date by makeMove and unmakeMove,
+ * which rescores only the windows around each move, always equals a full
+ * scan of the board, for both sides and through whole random games
+ * 
+ * @author Leticia Wanderley
+ */
+public class EvaluationTest {
+
+	private static final double DELTA = 1e-6;
+	private static final int GAMES = 40;
+
+	@Test
+	public void incrementalMatchesRescan() {
+		Random random = new Random(150721453L);
+		for (int game = 0; game < GAMES; game++) {
+			for (int me = BitBoard.BLACK; me <= BitBoard.WHITE; me++) {
+				assertIncrementalMatchesRescan(new Player150721453(1), new Player150721453(1), random, 8, me);
+				assertIncrementalMatchesRescan(new ThreatModification(1), new ThreatModification(1), random, 8, me);
+				assertIncrementalMatchesRescan(new ThreatModification(1), new ThreatModification(1), random, 11, me);
+			}
+		}
+	}
+
+	/**
+	 * Plays a random game with makeMove, then takes every move back with
+	 * unmakeMove, and compares the evaluation of the player with a full scan
+	 * after each of them
+	 * 
+	 * @param player
+	 *            Player whose evaluation is kept up to date
+	 * @param scanner
+	 *            Player of the same class that scans the whole board
+	 * @param random
+	 *            Chooses the moves
+	 * @param size
+	 *            Number of rows and columns of the board
+	 * @param me
+	 *            Side the players evaluate for
+	 */
+	private static void assertIncrementalMatchesRescan(AlphaBetaPlayer player, AlphaBetaPlayer scanner,
+			Random random, int size, int me) {
+		BitBoard board = new BitBoard(Boards.empty(size));
+		int[] moves = new int[size * size];
+		int played = 0;
+		// the search starts from a position with stones, as the players do
+		int side = BitBoard.BLACK;
+		board.make(size / 2, size / 2, side);
+		player.startSearch(board, me);
+		while (board.candidateCount() > 0 && played < moves.length - 1) {
+			side = BitBoard.opposite(side);
+			int move = board.candidates()[random.nextInt(board.candidateCount())];
+			player.makeMove(board, move / size, move % size, side, me);
+			moves[played++] = move;
+			assertEquals(scan(scanner, board, me), player.evaluation(), DELTA);
+		}
+		while (played > 0) {
+			int move = moves[--played];
+			player.unmakeMove(board, move / size, move % size);
+			assertEquals(scan(scanner, board, me), player.evaluation(), DELTA);
+		}
+	}
+
+	/**
+	 * @param scanner
+	 *            Player that evaluates the board
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param me
+	 *            Side the player evaluates for
+	 * @return evaluation of a full scan of a copy of the board
+	 */
+	private static double scan(AlphaBetaPlayer scanner, BitBoard board, int me) {
+		scanner.startSearch(new BitBoard(board), me);
+		return scanner.evaluation();
+	}
+}
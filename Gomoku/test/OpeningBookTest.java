@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Color;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the lookups of a small book generated for the test: every rotation
+ * and reflection of a position in the book gets the image of the same move,
+ * and positions not in the book get none
+ * 
+ * @author Leticia Wanderley
+ */
+public class OpeningBookTest {
+
+	private static final int SIZE = 8;
+	private static File file;
+	private static OpeningBook book;
+
+	@BeforeClass
+	public static void generate() throws IOException {
+		file = File.createTempFile("opening", ".book");
+		// the first two stones, searched 3 plies deep
+		OpeningBook.main(new String[] { file.getPath(), "3", "3", Integer.toString(SIZE) });
+		book = OpeningBook.load(file);
+	}
+
+	@AfterClass
+	public static void delete() {
+		file.delete();
+	}
+
+	@Test
+	public void everyOrientationGetsTheSameMove() {
+		for (int black = 0; black < SIZE * SIZE; black++) {
+			Color[][] board = Boards.empty(SIZE);
+			board[black / SIZE][black % SIZE] = Color.BLACK;
+			BitBoard bitBoard = new BitBoard(board);
+			if (book.lookup(bitBoard, new Random(1)) != null) {
+				assertOrientationsAgree(board);
+				// the replies the book is generated with
+				for (int white = 0; white < SIZE * SIZE; white++) {
+					if (board[white / SIZE][white % SIZE] == null
+							&& bitBoard.hasAdjacentStones(white / SIZE, white % SIZE)) {
+						board[white / SIZE][white % SIZE] = Color.WHITE;
+						assertOrientationsAgree(board);
+						board[white / SIZE][white % SIZE] = null;
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void unknownPositionsHaveNoMove() {
+		assertNull(book.lookup(new BitBoard(Boards.parse("........", "........", "..X.....", "...O....",
+				"....X...", "........", "........", "........")), new Random(1)));
+		// the book is for 8x8 boards
+		Color[][] larger = Boards.empty(SIZE + 1);
+		larger[SIZE / 2][SIZE / 2] = Color.BLACK;
+		assertNull(book.lookup(new BitBoard(larger), new Random(1)));
+	}
+
+	@Test(expected = IOException.class)
+	public void booksOfOtherKeysAreRejected() throws IOException {
+		File old = File.createTempFile("opening", ".book");
+		try {
+			DataOutputStream output = new DataOutputStream(new FileOutputStream(old));
+			try {
+				output.writeInt(0x474B4231); // "GKB1"
+				output.writeInt(SIZE);
+				output.writeInt(SIZE);
+				output.writeInt(0);
+			} finally {
+				output.close();
+			}
+			OpeningBook.load(old);
+		} finally {
+			old.delete();
+		}
+	}
+
+	/**
+	 * Looks up every rotation and reflection of a position, and checks that
+	 * each gets a move, on an empty position, that leads to the same
+	 * position as the move of the board itself
+	 * 
+	 * @param board
+	 *            Position in the book
+	 */
+	private static void assertOrientationsAgree(Color[][] board) {
+		BitBoard bitBoard = new BitBoard(board);
+		Move move = book.lookup(bitBoard, new Random(1));
+		assertNotNull(move);
+		long expected = canonicalHashAfter(board, move);
+		Symmetry symmetries = bitBoard.symmetry();
+		for (int symmetry = 0; symmetry < symmetries.count(); symmetry++) {
+			Color[][] image = Boards.empty(SIZE);
+			for (int position = 0; position < SIZE * SIZE; position++) {
+				int transformed = symmetries.image(symmetry, position);
+				image[transformed / SIZE][transformed % SIZE] = board[position / SIZE][position % SIZE];
+			}
+			Move imageMove = book.lookup(new BitBoard(image), new Random(1));
+			assertNotNull(imageMove);
+			assertNull(image[imageMove.row][imageMove.col]);
+			assertEquals(expected, canonicalHashAfter(image, imageMove));
+		}
+	}
+
+	/**
+	 * @param board
+	 *            Representation of the game board
+	 * @param move
+	 *            Move of the side to play
+	 * @return canonical hash of the position after the move
+	 */
+	private static long canonicalHashAfter(Color[][] board, Move move) {
+		BitBoard bitBoard = new BitBoard(board);
+		bitBoard.make(move.row, move.col, bitBoard.stones() % 2 == 0 ? BitBoard.BLACK : BitBoard.WHITE);
+		return bitBoard.canonicalHash();
+	}
+}
@@ -0,0 +1,37 @@
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+/**
+ * Checks that pondering starts after a move, with the sequential search and
+ * with the parallel root search: the principal variation must hold the reply
+ * the player ponders on
+ * 
+ * @author Leticia Wanderley
+ */
+public class PonderingTest {
+
+	private static final String[] POSITION = { "........", "........", "..OX....", "..XOX...", "...XO...",
+			"....O...", "........", "........" };
+	private static final int[] THREADS = { 1, 2, 4 };
+
+	@Test
+	public void pondersOnPredictedReply() {
+		for (int threads : THREADS) {
+			Player150721453 player = new Player150721453(1);
+			player.setThreads(threads);
+			player.setMaxDepth(4);
+			player.setTimeLimit(3600000);
+			player.setPondering(true);
+			player.chooseMove(Boards.parse(POSITION), Color.BLACK);
+			int length = player.getPrincipalVariation().length;
+			boolean pondering = player.isPondering();
+			player.setPondering(false);
+			player.setThreads(1);
+			assertTrue("principal variation of " + length + " moves with " + threads + " threads", length > 1);
+			assertTrue("not pondering with " + threads + " threads", pondering);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the position cache returns what was stored in it, that the
+ * entries survive in the file, and that files written for other searches are
+ * replaced instead of read, without changing them under the processes that
+ * still map them
+ * 
+ * @author Leticia Wanderley
+ */
+public class PositionCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void storedEntriesAreFound() throws IOException {
+		PositionCache cache = PositionCache.open(this.folder.newFile(), 1, 8, 8, 5);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		assertFalse(cache.probe(0x1234L, entry));
+		cache.store(0x1234L, 7, TranspositionTable.LOWER, -12.5, 63);
+		cache.store(0x5678L, 4, TranspositionTable.EXACT, 1e6, -1);
+		assertTrue(cache.probe(0x1234L, entry));
+		assertEntry(entry, 7, TranspositionTable.LOWER, -12.5, 63);
+		assertTrue(cache.probe(0x5678L, entry));
+		assertEntry(entry, 4, TranspositionTable.EXACT, 1e6, -1);
+		assertFalse(cache.probe(0x1234L ^ 1L << 40, entry));
+	}
+
+	@Test
+	public void entriesSurviveInTheFile() throws IOException {
+		File file = this.folder.newFile();
+		PositionCache cache = PositionCache.open(file, 1, 8, 8, 5);
+		cache.store(0x1234L, 9, TranspositionTable.UPPER, 42.0, 17);
+		cache.flush();
+		// the process keeps one cache per file, a copy is mapped again
+		PositionCache reopened = PositionCache.open(copy(file), 1, 8, 8, 5);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		assertTrue(reopened.probe(0x1234L, entry));
+		assertEntry(entry, 9, TranspositionTable.UPPER, 42.0, 17);
+	}
+
+	@Test
+	public void otherBoardsEmptyTheFile() throws IOException {
+		File file = this.folder.newFile();
+		PositionCache cache = PositionCache.open(file, 1, 8, 8, 5);
+		cache.store(0x1234L, 9, TranspositionTable.UPPER, 42.0, 17);
+		cache.flush();
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		assertFalse(PositionCache.open(copy(file), 1, 15, 15, 5).probe(0x1234L, entry));
+		assertFalse(PositionCache.open(copy(file), 1, 8, 8, 4).probe(0x1234L, entry));
+		assertTrue(PositionCache.open(copy(file), 1, 8, 8, 5).probe(0x1234L, entry));
+	}
+
+	@Test
+	public void otherVersionsEmptyTheFile() throws IOException {
+		File file = this.folder.newFile();
+		PositionCache cache = PositionCache.open(file, 1, 8, 8, 5);
+		cache.store(0x1234L, 9, TranspositionTable.UPPER, 42.0, 17);
+		cache.flush();
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		// version of the format, then signature of the keys and evaluation
+		for (int offset : new int[] { 4, 24 }) {
+			File copy = copy(file);
+			RandomAccessFile header = new RandomAccessFile(copy, "rw");
+			try {
+				header.seek(offset);
+				int value = header.readInt();
+				header.seek(offset);
+				header.writeInt(value + 1);
+			} finally {
+				header.close();
+			}
+			assertFalse(PositionCache.open(copy, 1, 8, 8, 5).probe(0x1234L, entry));
+		}
+	}
+
+	@Test
+	public void replacedFilesAreNotTruncated() throws IOException {
+		File file = this.folder.newFile();
+		PositionCache.open(file, 1, 8, 8, 5).flush();
+		File copy = copy(file);
+		// another process mapping the file, as an old server does
+		MappedByteBuffer mapped;
+		RandomAccessFile input = new RandomAccessFile(copy, "rw");
+		try {
+			mapped = input.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, input.length());
+		} finally {
+			input.close();
+		}
+		PositionCache.open(copy, 1, 15, 15, 5);
+		// still the old header, and every page of the old file still readable
+		assertEquals(8, mapped.getInt(12));
+		assertEquals(0, mapped.get(mapped.capacity() - 1));
+		mapped.putLong(mapped.capacity() - 8, 1L);
+	}
+
+	@Test(expected = IOException.class)
+	public void oneFileServesOneBoardSize() throws IOException {
+		File file = this.folder.newFile();
+		PositionCache.open(file, 1, 8, 8, 5);
+		PositionCache.open(file, 1, 15, 15, 5);
+	}
+
+	/**
+	 * @param file
+	 *            Cache file
+	 * @return copy of the file in the temporary folder
+	 * @throws IOException
+	 *             if the file cannot be copied
+	 */
+	private File copy(File file) throws IOException {
+		File copy = this.folder.newFile();
+		Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return copy;
+	}
+
+	private static void assertEntry(TranspositionTable.Entry entry, int depth, int bound, double score, int move) {
+		assertEquals(depth, entry.depth);
+		assertEquals(bound, entry.bound);
+		assertEquals(score, entry.score, 0.0);
+		assertEquals(move, entry.move);
+	}
+}
@@ -0,0 +1,102 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the symmetries of the boards: each is a permutation of the
+ * positions undone by its preimage, and the hash a board keeps for each of
+ * them is the hash of the transformed board
+ * 
+ * @author Leticia Wanderley
+ */
+public class SymmetryTest {
+
+	private static final int[][] SIZES = { { 8, 8 }, { 9, 9 }, { 8, 10 } };
+
+	@Test
+	public void preimagesUndoImages() {
+		for (int[] size : SIZES) {
+			Symmetry symmetries = Symmetry.of(size[0], size[1]);
+			assertEquals(size[0] == size[1] ? 8 : 4, symmetries.count());
+			int cells = size[0] * size[1];
+			for (int symmetry = 0; symmetry < symmetries.count(); symmetry++) {
+				boolean[] seen = new boolean[cells];
+				for (int position = 0; position < cells; position++) {
+					int image = symmetries.image(symmetry, position);
+					assertTrue(image >= 0 && image < cells && !seen[image]);
+					seen[image] = true;
+					assertEquals(position, symmetries.preimage(symmetry, image));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void hashesMatchTransformedBoards() {
+		Random random = new Random(150721453L);
+		for (int[] size : SIZES) {
+			for (int game = 0; game < 20; game++) {
+				BitBoard board = new BitBoard(new Color[size[0]][size[1]]);
+				int side = BitBoard.BLACK;
+				for (int move = 0; move < 12; move++) {
+					int position = random.nextInt(size[0] * size[1]);
+					if (board.get(position) == BitBoard.EMPTY) {
+						board.make(position / size[1], position % size[1], side);
+						side = BitBoard.opposite(side);
+						assertHashesMatch(board);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the hash a board keeps for each symmetry against a board built
+	 * from the transformed stones, and the canonical hash and symmetry
+	 * 
+	 * @param board
+	 *            Board after some moves
+	 */
+	private static void assertHashesMatch(BitBoard board) {
+		Symmetry symmetries = board.symmetry();
+		// the hash of a board built from stones does not hold the side to move
+		long side = board.stones() % 2 == 0 ? 0 : Zobrist.SIDE;
+		long canonical = Long.MAX_VALUE;
+		long imageCanonical = new BitBoard(image(board, 0)).canonicalHash();
+		for (int symmetry = 0; symmetry < symmetries.count(); symmetry++) {
+			BitBoard image = new BitBoard(image(board, symmetry));
+			assertEquals(image.hash(), board.hash(symmetry) ^ side);
+			// every image of a position has the same canonical hash
+			assertEquals(imageCanonical, image.canonicalHash());
+			canonical = Math.min(canonical, board.hash(symmetry));
+		}
+		assertEquals(canonical, board.canonicalHash());
+		assertEquals(board.canonicalHash(), board.hash(board.canonicalSymmetry()));
+	}
+
+	/**
+	 * @param board
+	 *            Representation of the state of the game
+	 * @param symmetry
+	 *            Symmetry of the board
+	 * @return board with every stone moved to its image under the symmetry
+	 */
+	private static Color[][] image(BitBoard board, int symmetry) {
+		Symmetry symmetries = board.symmetry();
+		int rows = (symmetry & 4) != 0 ? board.cols : board.rows;
+		int cols = (symmetry & 4) != 0 ? board.rows : board.cols;
+		Color[][] image = new Color[rows][cols];
+		for (int position = 0; position < board.rows * board.cols; position++) {
+			int stone = board.get(position);
+			if (stone != BitBoard.EMPTY) {
+				int transformed = symmetries.image(symmetry, position);
+				image[transformed / cols][transformed % cols] = stone == BitBoard.BLACK ? Color.BLACK : Color.WHITE;
+			}
+		}
+		return image;
+	}
+}
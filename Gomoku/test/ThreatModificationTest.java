@@ -0,0 +1,147 @@
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the threat tables of ThreatModification score every window
+ * of five in a row boards as the string patterns of the original player did
+ * 
+ * @author Leticia Wanderley
+ */
+public class ThreatModificationTest {
+
+	private static final int[] ROW_STEPS = { 0, 1, 1, 1 };
+	private static final int[] COL_STEPS = { 1, 0, 1, -1 };
+	private static final int BOARDS = 300;
+
+	@Test
+	public void tablesMatchStringPatterns() {
+		Random random = new Random(150721453L);
+		ThreatModification player = new ThreatModification(1);
+		for (int b = 0; b < BOARDS; b++) {
+			int size = 6 + random.nextInt(6);
+			Color[][] board = randomBoard(random, size, random.nextDouble());
+			BitBoard bitBoard = new BitBoard(board);
+			for (Color me : new Color[] { Color.BLACK, Color.WHITE }) {
+				for (int row = 0; row < size; row++) {
+					for (int col = 0; col < size; col++) {
+						for (int d = 0; d < 4; d++) {
+							assertEquals(stringThreatSearch(row, col, ROW_STEPS[d], COL_STEPS[d], board, me),
+									player.threatSearch(row, col, ROW_STEPS[d], COL_STEPS[d], bitBoard,
+											BitBoard.side(me)),
+									0.0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param random
+	 *            Places the stones
+	 * @param size
+	 *            Number of rows and columns
+	 * @param density
+	 *            Chance of a position holding a stone
+	 * @return board with stones of both colors placed at random
+	 */
+	private static Color[][] randomBoard(Random random, int size, double density) {
+		Color[][] board = new Color[size][size];
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				if (random.nextDouble() < density) {
+					board[row][col] = random.nextBoolean() ? Color.BLACK : Color.WHITE;
+				}
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Searches for possible threats in sets of 6 adjacent positions, as
+	 * ThreatModification did before its threat tables
+	 * 
+	 * @param currentRow
+	 *            Current row being searched
+	 * @param currentCol
+	 *            Current column being searched
+	 * @param rowStep
+	 *            Row search step
+	 * @param colStep
+	 *            Column search step
+	 * @param board
+	 *            Representation of the game board
+	 * @param me
+	 *            Color which the player is playing
+	 * @return value of threat found within 6 positions set
+	 */
+	private static double stringThreatSearch(int currentRow, int currentCol, int rowStep, int colStep,
+			Color[][] board, Color me) {
+		String stringRow = "";
+		int myCount = 0;
+		int oppositeCount = 0;
+		double value = 0.0;
+		Color opposite = Color.BLACK.equals(me) ? Color.WHITE : Color.BLACK;
+		for (int k = 0; k < 6; k++) {
+			int row = currentRow + k * rowStep;
+			int col = currentCol + k * colStep;
+			if (!(row < 0 || col < 0 || row >= board.length || col >= board[row].length)) {
+				if (me.equals(board[row][col])) {
+					myCount++;
+					stringRow += "M";
+				} else if (opposite.equals(board[row][col])) {
+					oppositeCount++;
+					stringRow += "O";
+				} else if (board[row][col] == null) {
+					stringRow += "_";
+				}
+			} else {
+				break;
+			}
+		}
+		if (stringRow.length() >= 5) {
+			if (myCount == 5 || stringRow.contains("MMMMM")) {
+				value += ThreatModification.Threat.FIVE.getWeight();
+			} else if (oppositeCount == 5 || stringRow.contains("OOOOO")) {
+				value += -(2 * ThreatModification.Threat.FIVE.getWeight());
+			} else if (stringRow.equals("_MMMM_")) {
+				value += ThreatModification.Threat.STRAIGHT_FOUR.getWeight();
+			} else if (stringRow.contains("_MMMM") || stringRow.contains("MMMM_") || stringRow.contains("M_MMM")
+					|| stringRow.contains("MM_MM") || stringRow.contains("MMM_M")) {
+				value += ThreatModification.Threat.FOUR.getWeight();
+			} else if (stringRow.equals("__MMM_") || stringRow.equals("___MMM") || stringRow.equals("MMM___")
+					|| stringRow.equals("_MMM__")) {
+				value += ThreatModification.Threat.OPEN_THREE.getWeight();
+			} else if (stringRow.contains("MMM__") || stringRow.contains("_MMM_") || stringRow.contains("M_MM_")
+					|| stringRow.contains("_M_MM") || stringRow.contains("M_M_M") || stringRow.contains("MM_M_")
+					|| stringRow.contains("_MM_M") || stringRow.contains("__MMM")) {
+				value += ThreatModification.Threat.THREE.getWeight();
+			} else if (stringRow.contains("___MM") || stringRow.contains("_MM__") || stringRow.contains("__MM_")
+					|| stringRow.contains("M_M__") || stringRow.contains("M__M_") || stringRow.contains("M___M")
+					|| stringRow.contains("_M__M") || stringRow.contains("__M_M")) {
+				value += ThreatModification.Threat.TWO.getWeight();
+			} else if (stringRow.equals("_OOOO_")) {
+				value += -(10 * ThreatModification.Threat.STRAIGHT_FOUR.getWeight());
+			} else if (stringRow.contains("_OOOO") || stringRow.contains("OOOO_") || stringRow.contains("O_OOO")
+					|| stringRow.contains("OO_OO") || stringRow.contains("OOO_O")) {
+				value += -(10 * ThreatModification.Threat.FOUR.getWeight());
+			} else if (stringRow.equals("__OOO_") || stringRow.equals("___OOO") || stringRow.equals("OOO___")
+					|| stringRow.equals("_OOO__")) {
+				value += -(3 * ThreatModification.Threat.OPEN_THREE.getWeight());
+			} else if (stringRow.contains("OOO__") || stringRow.contains("_OOO_") || stringRow.contains("O_OO_")
+					|| stringRow.contains("_O_OO") || stringRow.contains("O_O_O") || stringRow.contains("OO_O_")
+					|| stringRow.contains("_OO_O") || stringRow.contains("__OOO")) {
+				value += -(3 * ThreatModification.Threat.THREE.getWeight());
+			} else if (stringRow.contains("___OO") || stringRow.contains("_OO__") || stringRow.contains("__OO_")
+					|| stringRow.contains("O_O__") || stringRow.contains("O__O_") || stringRow.contains("O___O")
+					|| stringRow.contains("_O__O") || stringRow.contains("__O_O")) {
+				value += -(3 * ThreatModification.Threat.TWO.getWeight());
+			}
+		}
+		return value;
+	}
+}
@@ -0,0 +1,151 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the threat space search only claims wins the defender cannot
+ * escape: threes blocked beyond the window of the threat patterns, by the
+ * edge of the board or by an opponent's stone, are not forcing
+ * 
+ * @author Leticia Wanderley
+ */
+public class ThreatSpaceSearchTest {
+
+	// black wins with the threes around 4,3; 0,5 would make a three against
+	// the edge, searched first
+	private static final String[] EDGE_THREE = { "......XX", "........", "....O...", "...X....", ".XX.....",
+			".O.X....", "........", "........" };
+	// the same win, 0,3 would make a three blocked by the white stone at 0,6
+	private static final String[] BLOCKED_THREE = { "....XXO.", "........", "....O...", "...X....", ".XX.....",
+			".O.X....", "........", "........" };
+	// the same three against the edge with nothing else to play for
+	private static final String[] EDGE_ONLY = { "......XX", "........", "........", "........", "........",
+			"........", "........", "........" };
+
+	@Test
+	public void edgeThreeIsNotForcing() {
+		int win = findWin(EDGE_THREE);
+		assertTrue(win >= 0);
+		assertNotEquals(5, win);
+	}
+
+	@Test
+	public void blockedThreeIsNotForcing() {
+		int win = findWin(BLOCKED_THREE);
+		assertTrue(win >= 0);
+		assertNotEquals(3, win);
+	}
+
+	@Test
+	public void edgeThreeAloneIsNoWin() {
+		assertEquals(-1, findWin(EDGE_ONLY));
+	}
+
+	@Test
+	public void openThreeBecomesOpenFour() {
+		assertEquals(3 * 8 + 1, findWin(new String[] { "........", "........", "........", "..XXX...", "........",
+				"........", "........", "........" }));
+	}
+
+	@Test
+	public void winsSurviveEveryReply() {
+		assertWinSurvivesEveryReply(new BitBoard(Boards.parse(EDGE_THREE)));
+		assertWinSurvivesEveryReply(new BitBoard(Boards.parse(BLOCKED_THREE)));
+		Random random = new Random(150721453L);
+		int wins = 0;
+		for (int game = 0; game < 300; game++) {
+			BitBoard board = randomPosition(random, 8, 12);
+			if (board != null) {
+				wins += assertWinSurvivesEveryReply(board) ? 1 : 0;
+			}
+		}
+		assertTrue(wins > 0);
+	}
+
+	/**
+	 * Plays the win found on a position, if any, and checks that after every
+	 * reply of white black either wins at once or still has a win
+	 * 
+	 * @param board
+	 *            Position, black to move
+	 * @return true if a win was found
+	 */
+	private static boolean assertWinSurvivesEveryReply(BitBoard board) {
+		int win = new ThreatSpaceSearch(board, BitBoard.BLACK, Long.MAX_VALUE).findWin();
+		if (win < 0) {
+			return false;
+		}
+		board.make(win / board.cols, win % board.cols, BitBoard.BLACK);
+		if (board.isWin(win / board.cols, win % board.cols)) {
+			return true;
+		}
+		for (int reply = 0; reply < board.rows * board.cols; reply++) {
+			if (board.get(reply) != BitBoard.EMPTY) {
+				continue;
+			}
+			board.make(reply / board.cols, reply % board.cols, BitBoard.WHITE);
+			assertFalse("white wins with " + reply + " against " + win,
+					board.isWin(reply / board.cols, reply % board.cols));
+			boolean won = hasWinningSquare(board, BitBoard.BLACK)
+					|| new ThreatSpaceSearch(board, BitBoard.BLACK, Long.MAX_VALUE).findWin() >= 0;
+			board.unmake(reply / board.cols, reply % board.cols);
+			assertTrue("white escapes with " + reply + " against " + win, won);
+		}
+		return true;
+	}
+
+	/**
+	 * @param board
+	 *            Representation of the game board
+	 * @param side
+	 *            Side to move
+	 * @return true if the side completes a line with its next stone
+	 */
+	private static boolean hasWinningSquare(BitBoard board, int side) {
+		for (int move = 0; move < board.rows * board.cols; move++) {
+			if (board.get(move) == BitBoard.EMPTY && board.makesWin(move / board.cols, move % board.cols, side)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Plays random moves next to the stones from the center of the board
+	 * 
+	 * @param random
+	 *            Chooses the moves
+	 * @param size
+	 *            Number of rows and columns
+	 * @param stones
+	 *            Number of moves, even so black is to move
+	 * @return the position, or null if a side won on the way
+	 */
+	static BitBoard randomPosition(Random random, int size, int stones) {
+		BitBoard board = new BitBoard(Boards.empty(size));
+		board.make(size / 2, size / 2, BitBoard.BLACK);
+		for (int stone = 1; stone < stones; stone++) {
+			int move = board.candidates()[random.nextInt(board.candidateCount())];
+			board.make(move / size, move % size, stone % 2 == 0 ? BitBoard.BLACK : BitBoard.WHITE);
+			if (board.isWin(move / size, move % size)) {
+				return null;
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * @param rows
+	 *            Position, black to move
+	 * @return move of the win found for black, -1 if none
+	 */
+	private static int findWin(String[] rows) {
+		BitBoard board = new BitBoard(Boards.parse(rows));
+		return new ThreatSpaceSearch(board, BitBoard.BLACK, Long.MAX_VALUE).findWin();
+	}
+}
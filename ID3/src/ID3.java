@@ -1,14 +1,20 @@
-
 // ECS629/759 Assignment 2 - ID3 Skeleton Code
 // Author: Simon Dixon
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 class ID3 {
 
@@ -20,7 +26,7 @@ class ID3 {
 	 * number in the training and test files. The children are ordered in the
 	 * same order as the Strings in strings[][]. E.g., if value == 3, then the
 	 * array of children correspond to the branches for attribute 3 (named
-	 * data[0][3]): children[0] is the branch for attribute 3 == strings[3][0]
+	 * names[3]): children[0] is the branch for attribute 3 == strings[3][0]
 	 * children[1] is the branch for attribute 3 == strings[3][1] children[2] is
 	 * the branch for attribute 3 == strings[3][2] etc. The class number (leaf
 	 * nodes) also corresponds to the order of classes in strings[][]. For
@@ -45,7 +51,7 @@ class ID3 {
 			if (children != null) {
 				String s = "";
 				for (int i = 0; i < children.length; i++)
-					s += indent + data[0][value] + "=" + strings[value][i] + "\n" + children[i].toString(indent + '\t');
+					s += indent + names[value] + "=" + strings[value][i] + "\n" + children[i].toString(indent + '\t');
 				return s;
 			} else
 				return indent + "Class: " + strings[attributes - 1][value] + "\n";
@@ -53,22 +59,397 @@ class ID3 {
 
 	} // inner class Tree
 
+	/**
+	 * Value codes of one attribute, one per training example, in the order of
+	 * the examples. A code is the index of the value in strings[][], and codes
+	 * are kept in the narrowest primitive array that holds all of them, so a
+	 * column of a few values takes one byte per example.
+	 **/
+	static class Column {
+
+		private final byte[] bytes;
+		private final short[] shorts;
+		private final int[] ints;
+
+		/**
+		 * @param codes
+		 *            Value code of each example, only the first <b>length</b>
+		 *            are used
+		 * @param length
+		 *            Number of examples
+		 * @param values
+		 *            Number of different values of the attribute
+		 */
+		Column(int[] codes, int length, int values) {
+			if (values <= 1 << 8) {
+				bytes = new byte[length];
+				for (int ex = 0; ex < length; ex++)
+					bytes[ex] = (byte) codes[ex];
+				shorts = null;
+				ints = null;
+			} else if (values <= 1 << 16) {
+				shorts = new short[length];
+				for (int ex = 0; ex < length; ex++)
+					shorts[ex] = (short) codes[ex];
+				bytes = null;
+				ints = null;
+			} else {
+				ints = Arrays.copyOf(codes, length);
+				bytes = null;
+				shorts = null;
+			}
+		} // constructor
+
+		/** Returns the value code of an example. **/
+		int get(int ex) {
+			if (bytes != null)
+				return bytes[ex] & 0xFF;
+			if (shorts != null)
+				return shorts[ex] & 0xFFFF;
+			return ints[ex];
+		} // get()
+
+	} // static class Column
+
+	/**
+	 * The contents of a CSV file read by loadCSV(): the attribute names on the
+	 * first line, and the examples on the other lines as value codes, column
+	 * by column. The codes of each attribute number its values in the order
+	 * they first appear, as indexStrings() numbers them.
+	 **/
+	static class Dataset {
+
+		String[] names; // Name of each attribute
+		String[][] values; // Unique strings for each attribute, indexed by code
+		Column[] columns; // Value codes, indexed by attribute, example
+		int examples; // Number of examples, not counting the line of names
+
+	} // static class Dataset
+
+	/**
+	 * Unique values of one attribute, while a CSV file is read. The values are
+	 * kept as bytes in an open addressing hash table, so a field is looked up
+	 * without making a String of it; a String is only made for a new value.
+	 **/
+	static class ValueTable {
+
+		private byte[] bytes = new byte[256]; // Bytes of all the values, one after the other
+		private int[] start = new int[17]; // Offset of each value in bytes, and of the end of the last one
+		private int[] hashes = new int[16]; // Hash of each value
+		private int[] slots = new int[32]; // Code + 1 of the value in each slot, 0 if the slot is empty
+		private ArrayList<String> strings = new ArrayList<String>();
+		private int size = 0; // Number of values
+
+		/**
+		 * Returns the code of a value, adding it to the table if it is new.
+		 * 
+		 * @param field
+		 *            Bytes of the value
+		 * @param length
+		 *            Number of bytes of the value
+		 */
+		int code(byte[] field, int length) {
+			int hash = 0;
+			for (int i = 0; i < length; i++)
+				hash = 31 * hash + field[i];
+			hash ^= hash >>> 16;
+			int mask = slots.length - 1;
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				int code = slots[slot] - 1;
+				if (code < 0) {
+					slots[slot] = add(field, length, hash) + 1;
+					if (2 * size > slots.length)
+						rehash();
+					return size - 1;
+				}
+				if (hashes[code] == hash && matches(code, field, length))
+					return code;
+			}
+		} // code()
+
+		private boolean matches(int code, byte[] field, int length) {
+			int offset = start[code];
+			if (start[code + 1] - offset != length)
+				return false;
+			for (int i = 0; i < length; i++)
+				if (bytes[offset + i] != field[i])
+					return false;
+			return true;
+		} // matches()
+
+		private int add(byte[] field, int length, int hash) {
+			if (size == hashes.length) {
+				hashes = Arrays.copyOf(hashes, 2 * size);
+				start = Arrays.copyOf(start, 2 * size + 1);
+			}
+			int offset = start[size];
+			if (offset + length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, offset + length));
+			System.arraycopy(field, 0, bytes, offset, length);
+			start[size + 1] = offset + length;
+			hashes[size] = hash;
+			strings.add(new String(field, 0, length, StandardCharsets.UTF_8));
+			return size++;
+		} // add()
+
+		private void rehash() {
+			slots = new int[2 * slots.length];
+			int mask = slots.length - 1;
+			for (int code = 0; code < size; code++) {
+				int slot = hashes[code] & mask;
+				while (slots[slot] != 0)
+					slot = (slot + 1) & mask;
+				slots[slot] = code + 1;
+			}
+		} // rehash()
+
+		/** Returns the values as Strings, indexed by code. **/
+		String[] values() {
+			return strings.toArray(new String[size]);
+		} // values()
+
+		int size() {
+			return size;
+		} // size()
+
+	} // static class ValueTable
+
+	/**
+	 * Tokenizes the bytes of a CSV file as they are read, and dictionary
+	 * encodes each field into the codes of its column. Fields may be quoted
+	 * with '"', a quoted field may contain commas, line breaks and quotes
+	 * written twice, and lines may end with "\n", "\r\n" or "\r". Blank
+	 * lines are skipped.
+	 **/
+	static class CSVReader {
+
+		private static final int FIELD_START = 0; // Nothing read of the field yet
+		private static final int UNQUOTED = 1; // Inside a field that is not quoted
+		private static final int QUOTED = 2; // Inside a quoted field
+		private static final int QUOTE = 3; // A quote read inside a quoted field, closing or escaping
+
+		private final String fileName;
+		private int state = FIELD_START;
+		private byte[] field = new byte[64]; // Bytes of the current field, without the quotes
+		private int length = 0; // Number of bytes of the current field
+		private boolean quoted = false; // Whether the current field is quoted
+		private int fieldIndex = 0; // Position of the current field in its line
+		private int line = 0; // Line number, not counting blank lines
+		private ArrayList<String> names = new ArrayList<String>();
+		private ValueTable[] tables; // Unique values of each attribute
+		private int[][] codes; // Value codes of the examples, indexed by attribute, example
+		private int examples = 0;
+
+		CSVReader(String fileName) {
+			this.fileName = fileName;
+		} // constructor
+
+		/**
+		 * Reads the next bytes of the file.
+		 * 
+		 * @param buffer
+		 *            Bytes read
+		 * @param count
+		 *            Number of bytes read
+		 */
+		void read(byte[] buffer, int count) {
+			for (int i = 0; i < count; i++) {
+				byte b = buffer[i];
+				if (state == QUOTED) {
+					if (b == '"')
+						state = QUOTE;
+					else
+						append(b);
+					continue;
+				}
+				if (state == QUOTE) {
+					if (b == '"') {
+						append(b);
+						state = QUOTED;
+						continue;
+					}
+				} // else the quote closed the field, and b follows it
+				if (b == ',') {
+					endField();
+					state = FIELD_START;
+				} else if (b == '\n' || b == '\r') {
+					endLine();
+					state = FIELD_START;
+				} else if (b == '"' && state == FIELD_START) {
+					quoted = true;
+					state = QUOTED;
+				} else {
+					append(b);
+					state = UNQUOTED;
+				}
+			}
+		} // read()
+
+		private void append(byte b) {
+			if (length == field.length)
+				field = Arrays.copyOf(field, 2 * length);
+			field[length++] = b;
+		} // append()
+
+		private void endField() {
+			if (line == 0) {
+				names.add(new String(field, 0, length, StandardCharsets.UTF_8));
+			} else {
+				if (fieldIndex >= tables.length)
+					error("Scan error in " + fileName + " at " + line + ":" + fieldIndex);
+				codes[fieldIndex][examples] = tables[fieldIndex].code(field, length);
+			}
+			fieldIndex++;
+			length = 0;
+			quoted = false;
+		} // endField()
+
+		private void endLine() {
+			if (fieldIndex == 0 && length == 0 && !quoted)
+				return; // blank line, or the "\n" of "\r\n"
+			endField();
+			if (line == 0) {
+				tables = new ValueTable[fieldIndex];
+				codes = new int[fieldIndex][1024];
+				for (int attr = 0; attr < fieldIndex; attr++)
+					tables[attr] = new ValueTable();
+			} else {
+				if (fieldIndex != tables.length)
+					error("Scan error in " + fileName + " at " + line + ":" + fieldIndex);
+				if (++examples == codes[0].length)
+					for (int attr = 0; attr < codes.length; attr++)
+						codes[attr] = Arrays.copyOf(codes[attr], 2 * examples);
+			}
+			fieldIndex = 0;
+			line++;
+		} // endLine()
+
+		/** Ends the last line, which may have no line break, and returns the data. **/
+		Dataset finish() {
+			if (state == QUOTED)
+				error("Unterminated quote in " + fileName + " at " + line + ":" + fieldIndex);
+			endLine();
+			if (line == 0)
+				error("No data in " + fileName);
+			Dataset dataset = new Dataset();
+			dataset.names = names.toArray(new String[names.size()]);
+			dataset.values = new String[tables.length][];
+			dataset.columns = new Column[tables.length];
+			dataset.examples = examples;
+			for (int attr = 0; attr < tables.length; attr++) {
+				dataset.values[attr] = tables[attr].values();
+				dataset.columns[attr] = new Column(codes[attr], examples, tables[attr].size());
+			}
+			return dataset;
+		} // finish()
+
+	} // static class CSVReader
+
+	/**
+	 * Trains the subtree of a node as a fork/join task, for the parallel
+	 * training mode.
+	 **/
+	class TrainTask extends RecursiveTask<Tree> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final ArrayList<Integer> visitedQuestions;
+
+		TrainTask(int from, int to, ArrayList<Integer> visitedQuestions) {
+			this.from = from;
+			this.to = to;
+			this.visitedQuestions = visitedQuestions;
+		} // constructor
+
+		protected Tree compute() {
+			return trainDecisionTree(from, to, visitedQuestions);
+		} // compute()
+
+	} // inner class TrainTask
+
+	/**
+	 * Counts the tables and computes the gains of a group of questions, for
+	 * the parallel training mode. The groups have tables of their own in the
+	 * counts buffer and gains of their own, so they can run at the same time.
+	 **/
+	class GainTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double initialEntropy;
+		private final int from;
+		private final int to;
+		private final int[] questions;
+		private final int first;
+		private final int last;
+		private final int[] counts;
+		private final double[] gain;
+
+		GainTask(double initialEntropy, int from, int to, int[] questions, int first, int last, int[] counts,
+				double[] gain) {
+			this.initialEntropy = initialEntropy;
+			this.from = from;
+			this.to = to;
+			this.questions = questions;
+			this.first = first;
+			this.last = last;
+			this.counts = counts;
+			this.gain = gain;
+		} // constructor
+
+		protected void compute() {
+			computeGains(initialEntropy, from, to, questions, first, last, counts, gain);
+		} // compute()
+
+	} // inner class GainTask
+
 	private int attributes; // Number of attributes (including the class)
 	private int examples; // Number of training examples
 	private Tree decisionTree; // Tree learnt in training, used for classifying
 	private String[][] data; // Training data indexed by example, attribute
+	private String[] names; // Name of each attribute, the first line of the training data
 	private String[][] strings; // Unique strings for each attribute
 	private int[] stringCount; // Number of unique strings for each attribute
+	private HashMap<String, Integer>[] dictionary; // Code of each unique string, for each attribute
+	private Column[] columns; // Training data as value codes, indexed by attribute, example - 1
+	private int[] rows; // Indexes into columns of the training examples, grouped by tree node
+	private int[] tableOffset; // Start of the value x class table of each attribute in a counts buffer
+	private int tableSize; // Size of a counts buffer, the tables of all attributes
+	private ArrayList<int[]> countsPool; // Counts buffers not in use
+	private int parallelism; // Number of training threads, 1 to train sequentially
 
 	public ID3() {
 		attributes = 0;
 		examples = 0;
 		decisionTree = null;
 		data = null;
+		names = null;
 		strings = null;
 		stringCount = null;
+		dictionary = null;
+		columns = null;
+		rows = null;
+		tableOffset = null;
+		countsPool = null;
+		parallelism = 1;
 	} // constructor
 
+	/**
+	 * Sets the number of threads used for training. With more than one, the
+	 * subtrees of nodes with at least PARALLEL_THRESHOLD examples are trained
+	 * as separate fork/join tasks, and the gains of their questions are
+	 * computed by several tasks too. The tree is the same as the one trained
+	 * sequentially.
+	 * 
+	 * @param parallelism
+	 *            Number of threads, 1 to train sequentially
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	} // setParallelism()
+
 	public void printTree() {
 		if (decisionTree == null)
 			error("Attempted to print null Tree");
@@ -84,6 +465,9 @@ class ID3 {
 
 	static final double LOG2 = Math.log(2.0);
 
+	/** Smallest node, in examples, trained in parallel **/
+	static final int PARALLEL_THRESHOLD = 10000;
+
 	static double xlogx(double x) {
 		return x == 0 ? 0 : x * Math.log(x) / LOG2;
 	} // xlogx()
@@ -103,6 +487,31 @@ class ID3 {
 		}
 	} // classify()
 
+	/**
+	 * Execute the decision tree on the examples of testData, as loaded by
+	 * loadCSV(), and print the resulting class names, one to a line. The codes
+	 * of the test values are translated to the codes of the training values
+	 * once per value, not once per example.
+	 **/
+	public void classify(Dataset testData) {
+		if (decisionTree == null) {
+			error("Please run training phase before classification");
+		} else {
+			int[][] codes = new int[attributes - 1][]; // Training code of each test value, -1 if unseen
+			for (int attr = 0; attr < attributes - 1; attr++) {
+				codes[attr] = new int[testData.values[attr].length];
+				for (int code = 0; code < codes[attr].length; code++) {
+					Integer value = dictionary[attr].get(testData.values[attr][code]);
+					codes[attr][code] = value == null ? -1 : value;
+				}
+			}
+			for (int ex = 0; ex < testData.examples; ex++) {
+				int clazz = this.classifyExample(decisionTree, codes, testData.columns, ex).value;
+				System.out.println(strings[attributes - 1][clazz]);
+			}
+		}
+	} // classify()
+
 	/**
 	 * Create decision tree based on the training data
 	 * 
@@ -111,10 +520,45 @@ class ID3 {
 	 */
 	public void train(String[][] trainingData) {
 		indexStrings(trainingData);
-		ArrayList<Integer> visitedQuestions = new ArrayList<Integer>();
-		decisionTree = this.trainDecisionTree(trainingData, visitedQuestions);
+		buildTree();
+	} // train()
+
+	/**
+	 * Create decision tree based on the training data, as loaded by loadCSV()
+	 * 
+	 * @param trainingData
+	 *            Training data
+	 */
+	public void train(Dataset trainingData) {
+		indexStrings(trainingData);
+		buildTree();
 	} // train()
 
+	/** Trains the decision tree on the indexed training data. **/
+	private void buildTree() {
+		ArrayList<Integer> visitedQuestions = new ArrayList<Integer>();
+		rows = new int[examples - 1];
+		for (int ex = 0; ex < rows.length; ex++)
+			rows[ex] = ex;
+		tableOffset = new int[attributes - 1];
+		tableSize = 0;
+		for (int a = 0; a < attributes - 1; a++) {
+			tableOffset[a] = tableSize;
+			tableSize += stringCount[a] * stringCount[attributes - 1];
+		}
+		countsPool = new ArrayList<int[]>();
+		if (parallelism > 1) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				decisionTree = pool.invoke(new TrainTask(0, rows.length, visitedQuestions));
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			decisionTree = this.trainDecisionTree(0, rows.length, visitedQuestions);
+		}
+	} // buildTree()
+
 	/**
 	 * Find leaf class correspondent to data example by exploring the decision
 	 * tree
@@ -129,38 +573,90 @@ class ID3 {
 		if (tree.children == null) {
 			return tree;
 		}
-		for (int i = 0; i < stringCount[tree.value]; i++) {
-			if (line[tree.value].equals(strings[tree.value][i])) {
-				return this.classifyExample(tree.children[i], line);
-			}
+		Integer value = dictionary[tree.value].get(line[tree.value]);
+		if (value != null) {
+			return this.classifyExample(tree.children[value], line);
+		}
+		return null;
+	}
+
+	/**
+	 * Find leaf class correspondent to a test example by exploring the
+	 * decision tree
+	 * 
+	 * @param tree
+	 *            Trained decision tree
+	 * @param codes
+	 *            Training code of each test value, -1 if unseen, indexed by
+	 *            attribute, test code
+	 * @param testColumns
+	 *            Test data as value codes
+	 * @param ex
+	 *            Test example to be classified
+	 * @return Class to which the test example belongs
+	 */
+	private Tree classifyExample(Tree tree, int[][] codes, Column[] testColumns, int ex) {
+		if (tree.children == null) {
+			return tree;
+		}
+		int value = codes[tree.value][testColumns[tree.value].get(ex)];
+		if (value >= 0) {
+			return this.classifyExample(tree.children[value], codes, testColumns, ex);
 		}
 		return null;
 	}
 
 	/**
 	 * Train decision tree node by node based on which split will result in the
-	 * best entropy
+	 * best entropy. The examples of the node are rows[from] to rows[to - 1],
+	 * and splitting the node reorders them in place so that each branch gets
+	 * a range of its own. In the parallel training mode the branches of large
+	 * nodes are trained by fork/join tasks, joined in the same order
 	 * 
-	 * @param initialData
-	 *            Previous node data split
+	 * @param from
+	 *            First example of the previous node data split, in rows
+	 * @param to
+	 *            End (exclusive) of the previous node data split, in rows
 	 * @param visitedQuestions
 	 *            Questions (tree nodes) already visited by that branch
 	 * @return Trained decision tree
 	 */
 	@SuppressWarnings("unchecked")
-	private Tree trainDecisionTree(String[][] initialData, ArrayList<Integer> visitedQuestions) {
-		int leaf = checkForLeaf(initialData);
+	private Tree trainDecisionTree(int from, int to, ArrayList<Integer> visitedQuestions) {
+		int leaf = checkForLeaf(from, to);
 		if (leaf > -1) {
 			return new Tree(null, leaf);
 		}
-		double initialEntropy = this.computeEntropy(initialData);
-		int bestQuestion = this.findBestQuestion(initialEntropy, initialData, visitedQuestions);
-		ArrayList<String[][]> splits = this.splitData(bestQuestion, initialData);
+		double initialEntropy = this.computeEntropy(from, to);
+		int bestQuestion = this.findBestQuestion(initialEntropy, from, to, visitedQuestions);
+		int[] bounds = this.splitData(bestQuestion, from, to);
 		ArrayList<Integer> branchVisitedQuestions = (ArrayList<Integer>) visitedQuestions.clone();
 		branchVisitedQuestions.add(bestQuestion);
-		Tree[] children = new Tree[splits.size()];
-		for (int s = 0; s < splits.size(); s++) {
-			children[s] = this.trainDecisionTree(splits.get(s), branchVisitedQuestions);
+		int splits = 0;
+		for (int value = 0; value < stringCount[bestQuestion]; value++) {
+			if (bounds[value + 1] > bounds[value]) {
+				splits++;
+			}
+		}
+		Tree[] children = new Tree[splits];
+		if (this.isParallel(from, to)) {
+			List<TrainTask> tasks = new ArrayList<TrainTask>();
+			for (int value = 0; value < stringCount[bestQuestion]; value++) {
+				if (bounds[value + 1] > bounds[value]) {
+					tasks.add(new TrainTask(bounds[value], bounds[value + 1], branchVisitedQuestions));
+				}
+			}
+			ForkJoinTask.invokeAll(tasks);
+			for (int c = 0; c < splits; c++) {
+				children[c] = tasks.get(c).join();
+			}
+			return new Tree(children, bestQuestion);
+		}
+		int s = 0;
+		for (int value = 0; value < stringCount[bestQuestion]; value++) {
+			if (bounds[value + 1] > bounds[value]) {
+				children[s++] = this.trainDecisionTree(bounds[value], bounds[value + 1], branchVisitedQuestions);
+			}
 		}
 		return new Tree(children, bestQuestion);
 	}
@@ -168,127 +664,157 @@ class ID3 {
 	/**
 	 * Check if a data set contains only examples of the same class
 	 * 
-	 * @param dataSplit
-	 *            Data set
-	 * @return True if all examples belong to the same class, false otherwise
+	 * @param from
+	 *            First example of the data set, in rows
+	 * @param to
+	 *            End (exclusive) of the data set, in rows
+	 * @return Class of the examples if all of them belong to the same class,
+	 *         -1 otherwise
 	 */
-	private int checkForLeaf(String[][] dataSplit) {
-		boolean sameClass;
-		for (int clazz = 0; clazz < stringCount[attributes - 1]; clazz++) {
-			sameClass = true;
-			for (int ex = 1; ex < dataSplit.length; ex++) {
-				if (!dataSplit[ex][attributes - 1].equals(strings[attributes - 1][clazz])) {
-					sameClass = false;
-					break;
-				}
-			}
-			if (sameClass) {
-				return clazz;
+	private int checkForLeaf(int from, int to) {
+		Column classes = columns[attributes - 1];
+		if (from == to) {
+			return 0;
+		}
+		int clazz = classes.get(rows[from]);
+		for (int ex = from + 1; ex < to; ex++) {
+			if (classes.get(rows[ex]) != clazz) {
+				return -1;
 			}
 		}
-		return -1;
+		return clazz;
 	}
 
 	/**
 	 * Splits data set based on the best question, groups data by the attribute
-	 * values of the best question
+	 * values of the best question. The examples are moved within their range
+	 * of rows, one cycle of swaps at a time, until each value has a range of
+	 * its own
 	 * 
 	 * @param bestQuestion
 	 *            Question with the best gain, based on which the data will be
 	 *            split
-	 * @param initialData
-	 *            Data to be split
-	 * @return List of data splits
+	 * @param from
+	 *            First example of the data to be split, in rows
+	 * @param to
+	 *            End (exclusive) of the data to be split, in rows
+	 * @return Start of the range of each attribute value in rows, followed by
+	 *         the end of the last one
 	 */
-	private ArrayList<String[][]> splitData(int bestQuestion, String[][] initialData) {
-		int[] attrDistribution = new int[stringCount[bestQuestion]];
-		for (int ex = 1; ex < initialData.length; ex++) {
-			for (int value = 0; value < stringCount[bestQuestion]; value++) {
-				if (initialData[ex][bestQuestion].equals(strings[bestQuestion][value])) {
-					attrDistribution[value]++;
-					break;
-				}
-			}
+	private int[] splitData(int bestQuestion, int from, int to) {
+		Column column = columns[bestQuestion];
+		int[] bounds = new int[stringCount[bestQuestion] + 1];
+		for (int ex = from; ex < to; ex++) {
+			bounds[column.get(rows[ex]) + 1]++;
 		}
-		ArrayList<String[][]> splits = new ArrayList<String[][]>();
+		bounds[0] = from;
 		for (int attrValue = 0; attrValue < stringCount[bestQuestion]; attrValue++) {
-			String[][] split = new String[attrDistribution[attrValue] + 1][attributes];
-			split[0] = initialData[0];
-			int count = 1;
-			for (int line = 1; line < initialData.length; line++) {
-				if (initialData[line][bestQuestion].equals(strings[bestQuestion][attrValue])) {
-					split[count] = initialData[line];
-					count++;
+			bounds[attrValue + 1] += bounds[attrValue];
+		}
+		// next position of each value's range that may hold another value
+		int[] next = Arrays.copyOf(bounds, stringCount[bestQuestion]);
+		for (int attrValue = 0; attrValue < next.length; attrValue++) {
+			while (next[attrValue] < bounds[attrValue + 1]) {
+				int row = rows[next[attrValue]];
+				int value = column.get(row);
+				while (value != attrValue) {
+					// put the example in its range, and go on with the one it replaces
+					int replaced = rows[next[value]];
+					rows[next[value]++] = row;
+					row = replaced;
+					value = column.get(row);
 				}
-			}
-			if (split.length > 1) {
-				splits.add(split);
+				rows[next[attrValue]++] = row;
 			}
 		}
-		return splits;
+		return bounds;
 	}
 
 	/**
 	 * Calculates entropy of a determined data set
 	 * 
-	 * @param dataSplit
-	 *            Data set
+	 * @param from
+	 *            First example of the data set, in rows
+	 * @param to
+	 *            End (exclusive) of the data set, in rows
 	 * @return Entropy of data split
 	 */
-	private double computeEntropy(String[][] dataSplit) {
+	private double computeEntropy(int from, int to) {
+		Column classes = columns[attributes - 1];
 		double[] classDistribution = new double[stringCount[attributes - 1]];
-		for (int ex = 1; ex < dataSplit.length; ex++) {
-			for (int clazz = 0; clazz < stringCount[attributes - 1]; clazz++) {
-				if (dataSplit[ex][attributes - 1].equals(strings[attributes - 1][clazz])) {
-					classDistribution[clazz]++;
-					break;
-				}
-			}
+		for (int ex = from; ex < to; ex++) {
+			classDistribution[classes.get(rows[ex])]++;
 		}
 		double entropy = 0.0;
 		for (int c = 0; c < classDistribution.length; c++) {
-			entropy -= (xlogx(classDistribution[c] / (dataSplit.length - 1)));
+			entropy -= (xlogx(classDistribution[c] / (to - from)));
 		}
 		return entropy;
 	}
 
+	/**
+	 * Takes a counts buffer from the pool, or creates one if all of them are
+	 * in use
+	 * 
+	 * @return Buffer for the value x class tables of all attributes
+	 */
+	private synchronized int[] acquireCounts() {
+		if (countsPool.isEmpty()) {
+			return new int[tableSize];
+		}
+		return countsPool.remove(countsPool.size() - 1);
+	}
+
+	/**
+	 * Returns a counts buffer to the pool
+	 * 
+	 * @param counts
+	 *            Buffer taken with acquireCounts()
+	 */
+	private synchronized void releaseCounts(int[] counts) {
+		countsPool.add(counts);
+	}
+
 	/**
 	 * Finds best question based on which data split has the best gain on
-	 * entropy
+	 * entropy. The value x class tables of all the questions not visited yet
+	 * are counted in a single pass over the examples, or in the parallel
+	 * training mode, for large nodes, in one pass per group of questions,
+	 * with the groups running at the same time
 	 * 
 	 * @param initialEntropy
 	 *            Initial entropy of data set
-	 * @param dataSplit
-	 *            Data set
+	 * @param from
+	 *            First example of the data set, in rows
+	 * @param to
+	 *            End (exclusive) of the data set, in rows
 	 * @param visitedQuestions
 	 *            Questions already visited by that branch
 	 * @return Index of the best question
 	 */
-	private int findBestQuestion(double initialEntropy, String[][] dataSplit, ArrayList<Integer> visitedQuestions) {
-		double[] gain = new double[attributes - 1];
+	private int findBestQuestion(double initialEntropy, int from, int to, ArrayList<Integer> visitedQuestions) {
+		int[] questions = new int[attributes - 1];
+		int candidates = 0;
 		for (int a = 0; a < attributes - 1; a++) {
 			if (!visitedQuestions.contains(a)) {
-				double[][] distribution = new double[stringCount[a]][stringCount[attributes - 1]];
-				for (int ex = 1; ex < dataSplit.length; ex++) {
-					int clazz = 0;
-					for (int result = 0; result < stringCount[attributes - 1]; result++) {
-						if (dataSplit[ex][attributes - 1].equals(strings[attributes - 1][result])) {
-							clazz = result; // find class of data line
-							break;
-						}
-					}
-					for (int value = 0; value < stringCount[a]; value++) {
-						if (dataSplit[ex][a].equals(strings[a][value])) { // find value of attribute a
-							distribution[value][clazz]++; // compute value
-							break;
-						}
-					}
-				}
-				gain[a] = this.computeGain(initialEntropy, distribution, a, dataSplit.length - 1);
-			} else {
-				gain[a] = -Double.MAX_VALUE;
+				questions[candidates++] = a;
 			}
 		}
+		int[] counts = acquireCounts();
+		double[] gain = new double[attributes - 1];
+		Arrays.fill(gain, -Double.MAX_VALUE);
+		if (this.isParallel(from, to) && candidates > 1) {
+			int groups = Math.min(candidates, parallelism);
+			List<GainTask> tasks = new ArrayList<GainTask>();
+			for (int g = 0; g < groups; g++) {
+				tasks.add(new GainTask(initialEntropy, from, to, questions, g * candidates / groups,
+						(g + 1) * candidates / groups, counts, gain));
+			}
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			this.computeGains(initialEntropy, from, to, questions, 0, candidates, counts, gain);
+		}
+		releaseCounts(counts);
 		int bestQuestion = 0;
 		double helper = -Double.MAX_VALUE;
 		for (int question = 0; question < gain.length; question++) {
@@ -300,63 +826,155 @@ class ID3 {
 		return bestQuestion;
 	}
 
+	/**
+	 * Counts the value x class tables of a group of questions in one pass over
+	 * the examples, and calculates the gain of each question
+	 * 
+	 * @param initialEntropy
+	 *            Initial entropy of data set
+	 * @param from
+	 *            First example of the data set, in rows
+	 * @param to
+	 *            End (exclusive) of the data set, in rows
+	 * @param questions
+	 *            Questions not visited yet
+	 * @param first
+	 *            First question of the group, in questions
+	 * @param last
+	 *            End (exclusive) of the group, in questions
+	 * @param counts
+	 *            Counts buffer
+	 * @param gain
+	 *            Gain of each question, set for the questions of the group
+	 */
+	private void computeGains(double initialEntropy, int from, int to, int[] questions, int first, int last,
+			int[] counts, double[] gain) {
+		Column classes = columns[attributes - 1];
+		int classCount = stringCount[attributes - 1];
+		for (int q = first; q < last; q++) {
+			int a = questions[q];
+			Arrays.fill(counts, tableOffset[a], tableOffset[a] + stringCount[a] * classCount, 0);
+		}
+		for (int ex = from; ex < to; ex++) {
+			int row = rows[ex];
+			int clazz = classes.get(row);
+			for (int q = first; q < last; q++) {
+				int a = questions[q];
+				counts[tableOffset[a] + columns[a].get(row) * classCount + clazz]++;
+			}
+		}
+		for (int q = first; q < last; q++) {
+			gain[questions[q]] = this.computeGain(initialEntropy, counts, questions[q], to - from);
+		}
+	}
+
+	/**
+	 * @param from
+	 *            First example of a node, in rows
+	 * @param to
+	 *            End (exclusive) of the node, in rows
+	 * @return True if the node is trained with several tasks
+	 */
+	private boolean isParallel(int from, int to) {
+		return parallelism > 1 && to - from >= PARALLEL_THRESHOLD;
+	}
+
 	/**
 	 * Calculates gain of a certain question split
 	 * 
 	 * @param initialEntropy
 	 *            Initial entropy of data set before split
-	 * @param distribution
-	 *            Distribution of classes of data examples
+	 * @param counts
+	 *            Counts buffer holding the distribution of classes of data
+	 *            examples for each value of the attribute, at
+	 *            tableOffset[attribute]
 	 * @param attribute
 	 *            Attribute with which the split was made
 	 * @param dataSize
 	 *            Size of data set
 	 * @return Gain of the split made with the attribute
 	 */
-	private double computeGain(double initialEntropy, double[][] distribution, int attribute, int dataSize) {
-		double[] attrClassDistribution = new double[stringCount[attribute]];
-		for (int a = 0; a < distribution.length; a++) {
-			for (int c = 0; c < distribution[a].length; c++) {
-				attrClassDistribution[a] += (double) distribution[a][c];
-			}
-		}
+	private double computeGain(double initialEntropy, int[] counts, int attribute, int dataSize) {
+		int classCount = stringCount[attributes - 1];
 		double gain = initialEntropy;
-		for (int i = 0; i < distribution.length; i++) {
+		for (int i = 0; i < stringCount[attribute]; i++) {
+			int table = tableOffset[attribute] + i * classCount;
+			double attrClassDistribution = 0.0;
+			for (int j = 0; j < classCount; j++) {
+				attrClassDistribution += counts[table + j];
+			}
 			double entropy = 0.0;
-			for (int j = 0; j < distribution[i].length; j++) {
-				entropy -= (xlogx(distribution[i][j] / attrClassDistribution[i]));
+			for (int j = 0; j < classCount; j++) {
+				entropy -= (xlogx(counts[table + j] / attrClassDistribution));
 			}
-			gain -= (attrClassDistribution[i] / dataSize) * entropy;
+			gain -= (attrClassDistribution / dataSize) * entropy;
 		}
 		return gain;
 	}
 
+	/** Returns an empty dictionary of strings to codes for each attribute. **/
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static HashMap<String, Integer>[] newDictionary(int attributes) {
+		HashMap<String, Integer>[] dictionary = new HashMap[attributes];
+		for (int attr = 0; attr < attributes; attr++)
+			dictionary[attr] = new HashMap<String, Integer>();
+		return dictionary;
+	} // newDictionary()
+
 	/**
 	 * Given a 2-dimensional array containing the training data, numbers each
 	 * unique value that each attribute has, and stores these Strings in
 	 * instance variables; for example, for attribute 2, its first value would
 	 * be stored in strings[2][0], its second value in strings[2][1], and so on;
-	 * and the number of different values in stringCount[2].
+	 * and the number of different values in stringCount[2]. The numbers are
+	 * kept in a dictionary per attribute, and the training data is encoded
+	 * with them into columns[][], which training reads instead of the Strings.
 	 **/
 	void indexStrings(String[][] inputData) {
 		data = inputData;
+		names = data[0];
 		examples = data.length;
 		attributes = data[0].length;
 		stringCount = new int[attributes];
 		strings = new String[attributes][examples];// might not need all columns
-		int index = 0;
+		dictionary = newDictionary(attributes);
+		columns = new Column[attributes];
+		int[] codes = new int[examples - 1];
 		for (int attr = 0; attr < attributes; attr++) {
 			stringCount[attr] = 0;
 			for (int ex = 1; ex < examples; ex++) {
-				for (index = 0; index < stringCount[attr]; index++)
-					if (data[ex][attr].equals(strings[attr][index]))
-						break; // we've seen this String before
-				if (index == stringCount[attr]) // if new String found
+				Integer index = dictionary[attr].get(data[ex][attr]);
+				if (index == null) { // if new String found
+					index = stringCount[attr];
+					dictionary[attr].put(data[ex][attr], index);
 					strings[attr][stringCount[attr]++] = data[ex][attr];
+				}
+				codes[ex - 1] = index;
 			} // for each example
+			columns[attr] = new Column(codes, examples - 1, stringCount[attr]);
 		} // for each attribute
 	} // indexStrings()
 
+	/**
+	 * Takes the strings and value codes of training data loaded by loadCSV(),
+	 * which are numbered as indexStrings(String[][]) numbers them.
+	 **/
+	void indexStrings(Dataset inputData) {
+		data = null;
+		names = inputData.names;
+		examples = inputData.examples + 1;
+		attributes = names.length;
+		strings = inputData.values;
+		stringCount = new int[attributes];
+		dictionary = newDictionary(attributes);
+		columns = inputData.columns;
+		for (int attr = 0; attr < attributes; attr++) {
+			stringCount[attr] = strings[attr].length;
+			for (int index = 0; index < stringCount[attr]; index++)
+				dictionary[attr].put(strings[attr][index], index);
+		}
+	} // indexStrings()
+
 	/**
 	 * For debugging: prints the list of attribute values for each attribute and
 	 * their index values.
@@ -364,44 +982,59 @@ class ID3 {
 	void printStrings() {
 		for (int attr = 0; attr < attributes; attr++)
 			for (int index = 0; index < stringCount[attr]; index++)
-				System.out.println(data[0][attr] + " value " + index + " = " + strings[attr][index]);
+				System.out.println(names[attr] + " value " + index + " = " + strings[attr][index]);
 	} // printStrings()
 
+	/** Size of the buffer the CSV files are read through **/
+	static final int READ_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Reads a text file containing a fixed number of comma-separated values on
+	 * each line in a single pass, and returns the names on the first line and
+	 * the values on the other lines as value codes. Only the different values
+	 * of each attribute are made into Strings.
+	 **/
+	static Dataset loadCSV(String fileName) throws FileNotFoundException, IOException {
+		FileInputStream in = new FileInputStream(fileName);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			CSVReader reader = new CSVReader(fileName);
+			while (channel.read(buffer) >= 0) {
+				reader.read(buffer.array(), buffer.position());
+				buffer.clear();
+			}
+			return reader.finish();
+		} finally {
+			in.close();
+		}
+	} // loadCSV()
+
 	/**
 	 * Reads a text file containing a fixed number of comma-separated values on
 	 * each line, and returns a two dimensional array of these values, indexed
-	 * by line number and position in line.
+	 * by line number and position in line. Equal values share a String.
 	 **/
 	static String[][] parseCSV(String fileName) throws FileNotFoundException, IOException {
-		BufferedReader br = new BufferedReader(new FileReader(fileName));
-		String s = br.readLine();
-		int fields = 1;
-		int index = 0;
-		while ((index = s.indexOf(',', index) + 1) > 0)
-			fields++;
-		int lines = 1;
-		while (br.readLine() != null)
-			lines++;
-		br.close();
-		String[][] data = new String[lines][fields];
-		Scanner sc = new Scanner(new File(fileName));
-		sc.useDelimiter("[,\n]");
-		for (int l = 0; l < lines; l++)
-			for (int f = 0; f < fields; f++)
-				if (sc.hasNext())
-					data[l][f] = sc.next();
-				else
-					error("Scan error in " + fileName + " at " + l + ":" + f);
-		sc.close();
+		Dataset dataset = loadCSV(fileName);
+		String[][] data = new String[dataset.examples + 1][];
+		data[0] = dataset.names;
+		for (int ex = 0; ex < dataset.examples; ex++) {
+			data[ex + 1] = new String[dataset.names.length];
+			for (int attr = 0; attr < dataset.names.length; attr++)
+				data[ex + 1][attr] = dataset.values[attr][dataset.columns[attr].get(ex)];
+		}
 		return data;
 	} // parseCSV()
 
 	public static void main(String[] args) throws FileNotFoundException, IOException {
-		if (args.length != 2)
-			error("Expected 2 arguments: file names of training and test data");
-		String[][] trainingData = parseCSV(args[0]);
-		String[][] testData = parseCSV(args[1]);
+		if (args.length != 2 && args.length != 3)
+			error("Expected 2 or 3 arguments: file names of training and test data, number of training threads");
+		Dataset trainingData = loadCSV(args[0]);
+		Dataset testData = loadCSV(args[1]);
 		ID3 classifier = new ID3();
+		if (args.length == 3)
+			classifier.setParallelism(Integer.parseInt(args[2]));
 		classifier.train(trainingData);
 		classifier.printTree();
 		classifier.classify(testData);
@@ -0,0 +1,101 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Checks the tokenizing of ID3.CSVReader: quoted fields, line endings and
+ * blank lines, with the file read in chunks of every size so that quotes and
+ * "\r\n" line breaks are also split across reads.
+ **/
+public class CSVReaderTest {
+
+	@Test
+	public void quotedFields() {
+		assertParsed("name,note\n"
+				+ "\"a,b\",plain\n" // comma inside quotes
+				+ "\"say \"\"hi\"\"\",\"\"\n" // escaped quotes, empty quoted field
+				+ "\"two\nlines\",\"x\"\n", // line break inside quotes
+				new String[][] { { "name", "note" }, { "a,b", "plain" }, { "say \"hi\"", "" },
+						{ "two\nlines", "x" } });
+	}
+
+	@Test
+	public void lineEndings() {
+		String[][] expected = { { "a", "b" }, { "1", "2" }, { "3", "4" } };
+		assertParsed("a,b\r\n1,2\r\n3,4\r\n", expected);
+		assertParsed("a,b\r1,2\r3,4", expected);
+		assertParsed("a,b\n1,2\n3,4", expected);
+	}
+
+	@Test
+	public void blankLines() {
+		assertParsed("\r\na,b\r\n\r\n1,2\n\n\n3,4\r\n\r\n",
+				new String[][] { { "a", "b" }, { "1", "2" }, { "3", "4" } });
+	}
+
+	@Test
+	public void quotedCrlf() {
+		assertParsed("a,b\r\n\"1\r\n2\",\"3\"\r\n", new String[][] { { "a", "b" }, { "1\r\n2", "3" } });
+	}
+
+	@Test
+	public void parseFile() throws IOException {
+		File file = File.createTempFile("csvreader", ".csv");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write("a,b\r\n\"x,y\",1\r\nz,1\r\n".getBytes(StandardCharsets.UTF_8));
+			} finally {
+				out.close();
+			}
+			assertTableEquals(new String[][] { { "a", "b" }, { "x,y", "1" }, { "z", "1" } },
+					ID3.parseCSV(file.getPath()));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/** Parses a text with every read size and checks the rows found. **/
+	private static void assertParsed(String text, String[][] expected) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		for (int chunk = 1; chunk <= bytes.length; chunk++)
+			assertTableEquals(expected, parse(bytes, chunk));
+	} // assertParsed()
+
+	/** Checks the rows of a table one by one, so a failure tells the row. **/
+	private static void assertTableEquals(String[][] expected, String[][] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int row = 0; row < expected.length; row++)
+			assertArrayEquals("row " + row, expected[row], actual[row]);
+	} // assertTableEquals()
+
+	/**
+	 * Reads bytes with CSVReader, <b>chunk</b> bytes at a time, and returns
+	 * the names and values by line, as ID3.parseCSV() does.
+	 **/
+	private static String[][] parse(byte[] bytes, int chunk) {
+		ID3.CSVReader reader = new ID3.CSVReader("test.csv");
+		byte[] buffer = new byte[chunk];
+		for (int start = 0; start < bytes.length; start += chunk) {
+			int count = Math.min(chunk, bytes.length - start);
+			System.arraycopy(bytes, start, buffer, 0, count);
+			reader.read(buffer, count);
+		}
+		ID3.Dataset dataset = reader.finish();
+		String[][] data = new String[dataset.examples + 1][];
+		data[0] = dataset.names;
+		for (int ex = 0; ex < dataset.examples; ex++) {
+			data[ex + 1] = new String[dataset.names.length];
+			for (int attr = 0; attr < dataset.names.length; attr++)
+				data[ex + 1][attr] = dataset.values[attr][dataset.columns[attr].get(ex)];
+		}
+		return data;
+	} // parse()
+
+} // class CSVReaderTest